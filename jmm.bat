@@ -1,3 +1,6 @@
 @echo off
 
+rem Use the class data sharing archive made by "gradle cdsArchive", if there is one
+if exist "./build/install/jmm/lib/jmm.jsa" set JMM_OPTS=-XX:SharedArchiveFile=./build/install/jmm/lib/jmm.jsa -Xshare:auto %JMM_OPTS%
+
 call "./build/install/jmm/bin/jmm.bat" %*
@@ -47,28 +47,31 @@ type
     | name = ID        # IDStringType
     ;
 
+// Both forms of if share one alternative, so that the parser does not have to look past the whole then-branch to
+// know whether an else follows. JmmNodeBuilder gives the ones with an else the kind IfElseStatement.
 statement
     : '{' ( statement )* '}' #BlockStatement
-    | 'if' '(' expression ')' statement 'else' statement #IfElseStatement
-    | 'if' '(' expression ')' statement #IfStatement
+    | 'if' '(' expression ')' statement ( 'else' statement )? #IfStatement
     | 'while' '(' expression ')' statement #WhileStatement
-    | expression ';' #GeneralStatement
     | var=ID '=' expression ';' #Assignment
     | ID '[' expression ']' '=' expression ';' #ArrayDeclaration
+    | expression ';' #GeneralStatement
     ;
 
-
+// Alternatives go from the highest precedence to the lowest, as in Java: postfix, unary, multiplicative, additive,
+// relational, equality, &&, ||. The primary expressions at the end all start with a different token, but for 'new'.
 expression
-    : '!' expression                                      #UnaryOp
-    | expression op=('<' | '>' | '<=' | '>=' | '==' | '!=') expression  #BinaryOpCompare
-    | expression op='&&' expression                     #BinaryOpLogical
-    | expression op='||' expression                     #BinaryOpLogical
+    : expression '[' expression ']'                       #ArrayAccess
+    | expression '.' 'length'                             #Length
+    | expression '.' methodName=ID '(' (expression (',' expression)*)? ')' #MethodCall
+    | '!' expression                                      #UnaryOp
     | expression op=( '*' | '/' ) expression              #BinaryOpArithmetic
     | expression op=( '+' | '-') expression               #BinaryOpArithmetic
-    | expression '[' expression ']'                       #ArrayAccess
+    | expression op=('<' | '>' | '<=' | '>=') expression  #BinaryOpCompare
+    | expression op=('==' | '!=') expression              #BinaryOpCompare
+    | expression op='&&' expression                     #BinaryOpLogical
+    | expression op='||' expression                     #BinaryOpLogical
     | 'new' name='int' '[' expression ']' #NewArrayDeclaration
-    | expression '.' 'length'                             #Length
-    | expression '.' methodName=ID '(' (expression (',' expression)*)? ')' #MethodCall
     | 'new' name=ID '(' ')'                                    #GeneralDeclaration
     | '(' expression ')'                                  #Brackets
     | name=INTEGER                                       #Integer
@@ -0,0 +1,236 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A tree written by {@link AstSerializer}, read from a memory-mapped file or a byte array.
+ *
+ * The string table and the symbol table are read when the file is opened. The tree is decoded on the first call to
+ * {@link #getRoot()}, except for the children of methods, which are only decoded from the buffer when one of them is
+ * first accessed. Trees read from the same file share nothing but the buffer and the strings.
+ *
+ * A tree can be read from several threads, the children of each method are then still decoded only once. Changing
+ * the tree is not thread-safe, as for any other tree.
+ */
+public class AstFile {
+
+    private final ByteBuffer buffer;
+    private final String[] strings;
+    private final MySymbolTable symbolTable;
+    private final int rootOffset;
+    private JmmNode root;
+
+    private AstFile(ByteBuffer buffer) {
+        this.buffer = buffer;
+
+        Reader reader = new Reader(buffer.duplicate());
+        if (reader.buffer.getInt() != AstSerializer.MAGIC) {
+            throw new IllegalArgumentException("Not a serialized AST");
+        }
+        int version = reader.buffer.get();
+        if (version != AstSerializer.VERSION) {
+            throw new IllegalArgumentException("Unsupported serialized AST version " + version);
+        }
+        int flags = reader.buffer.get();
+
+        this.strings = new String[reader.readVarint()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[reader.readVarint()];
+            reader.buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        this.symbolTable = (flags & AstSerializer.HAS_SYMBOL_TABLE) != 0 ? reader.readSymbolTable() : null;
+        this.rootOffset = reader.buffer.position();
+    }
+
+    public static AstFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new AstFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static AstFile fromBytes(byte[] bytes) {
+        return new AstFile(ByteBuffer.wrap(bytes));
+    }
+
+    public synchronized JmmNode getRoot() {
+        if (root == null) {
+            Reader reader = new Reader(buffer.duplicate());
+            reader.buffer.position(rootOffset);
+            root = reader.readNode();
+        }
+        return root;
+    }
+
+    /**
+     * @return the symbol table written with the tree, without an import resolver
+     */
+    public Optional<MySymbolTable> getSymbolTable() {
+        return Optional.ofNullable(symbolTable);
+    }
+
+    private class Reader {
+        private final ByteBuffer buffer;
+
+        private Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private JmmNode readNode() {
+            String kind = readString();
+            List<String> hierarchy = new ArrayList<>();
+            int hierarchySize = readVarint();
+            for (int i = 0; i < hierarchySize; i++) {
+                hierarchy.add(readString());
+            }
+
+            NodeKind nodeKind = NodeKind.fromKind(kind);
+            CompactJmmNode node = new CompactJmmNode(kind,
+                    nodeKind != null && nodeKind.getHierarchy().equals(hierarchy) ? nodeKind.getHierarchy() : hierarchy);
+            node.setPosition(readVarint() - 1, readVarint() - 1, readVarint() - 1, readVarint() - 1);
+
+            // Values that refer to children are set once the children are read
+            int numAttributes = readVarint();
+            List<String> names = new ArrayList<>(numAttributes);
+            List<Object> values = new ArrayList<>(numAttributes);
+            for (int i = 0; i < numAttributes; i++) {
+                names.add(readString());
+                values.add(readValue());
+            }
+
+            boolean lazy = (buffer.get() & AstSerializer.LAZY_CHILDREN) != 0;
+            int numChildren = readVarint();
+            if (lazy) {
+                int size = readVarint();
+                int offset = buffer.position();
+                buffer.position(offset + size);
+                node.setChildrenLoader(() -> {
+                    Reader childrenReader = new Reader(AstFile.this.buffer.duplicate());
+                    childrenReader.buffer.position(offset);
+                    for (int i = 0; i < numChildren; i++) {
+                        node.add(childrenReader.readNode());
+                    }
+                });
+            } else {
+                for (int i = 0; i < numChildren; i++) {
+                    node.add(readNode());
+                }
+            }
+
+            for (int i = 0; i < numAttributes; i++) {
+                node.putObject(names.get(i), resolve(node, values.get(i)));
+            }
+            return node;
+        }
+
+        private Object readValue() {
+            int tag = buffer.get();
+            switch (tag) {
+                case AstSerializer.VALUE_NULL:
+                    return null;
+                case AstSerializer.VALUE_STRING:
+                    return readString();
+                case AstSerializer.VALUE_LIST:
+                    int size = readVarint();
+                    List<Object> values = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        values.add(readValue());
+                    }
+                    return values;
+                case AstSerializer.VALUE_CHILD:
+                    return new ChildReference(readVarint());
+                default:
+                    throw new IllegalArgumentException("Unknown attribute value tag " + tag);
+            }
+        }
+
+        private Object resolve(JmmNode node, Object value) {
+            if (value instanceof ChildReference) {
+                return node.getJmmChild(((ChildReference) value).index);
+            }
+            if (value instanceof List) {
+                List<Object> values = new ArrayList<>();
+                for (Object element : (List<?>) value) {
+                    values.add(resolve(node, element));
+                }
+                return values;
+            }
+            return value;
+        }
+
+        private MySymbolTable readSymbolTable() {
+            MySymbolTable.Builder table = MySymbolTable.builder();
+            int numImports = readVarint();
+            for (int i = 0; i < numImports; i++) {
+                table.addImport(readString());
+            }
+            table.setClassName(readString());
+            table.setSuper(readString());
+            for (Symbol field : readSymbols()) {
+                table.addField(field);
+            }
+
+            int numMethods = readVarint();
+            for (int i = 0; i < numMethods; i++) {
+                String name = readString();
+                Type returnType = readType();
+                List<Symbol> parameters = readSymbols();
+                table.addMethod(name, returnType, parameters, readSymbols());
+            }
+            return table.build();
+        }
+
+        private List<Symbol> readSymbols() {
+            int size = readVarint();
+            List<Symbol> symbols = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Type type = readType();
+                symbols.add(new Symbol(type, readString()));
+            }
+            return symbols;
+        }
+
+        private Type readType() {
+            String name = readString();
+            return new Type(name, buffer.get() != 0);
+        }
+
+        private String readString() {
+            int index = readVarint();
+            return index == 0 ? null : strings[index - 1];
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private static class ChildReference {
+        private final int index;
+
+        private ChildReference(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes JmmNode trees, and optionally the MySymbolTable built from them, in a compact binary format read by
+ * {@link AstFile}.
+ *
+ * The file starts with a header and a table with every distinct string, which the rest of the file refers to by
+ * index. Numbers are unsigned varints. Each node is its kind, hierarchy, positions, attributes and children, in
+ * preorder. The children of methods are preceded by their size in bytes, so that a reader can skip them and only decode
+ * them when they are first accessed.
+ *
+ * Attribute values can be strings, lists of values and references to children of the node, as in the trees built by
+ * the parser. Anything else is written as its toString.
+ */
+public class AstSerializer {
+
+    static final int MAGIC = 0x4A4D4D41;
+    static final int VERSION = 1;
+
+    static final int HAS_SYMBOL_TABLE = 1;
+    static final int LAZY_CHILDREN = 1;
+
+    static final int VALUE_NULL = 0;
+    static final int VALUE_STRING = 1;
+    static final int VALUE_LIST = 2;
+    static final int VALUE_CHILD = 3;
+
+    static final List<String> POSITIONS = List.of("lineStart", "colStart", "lineEnd", "colEnd");
+
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+
+    private AstSerializer() {
+    }
+
+    /**
+     * @param table the symbol table of the tree, or null
+     */
+    public static byte[] write(JmmNode root, MySymbolTable table) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(out, root, table);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not serialize AST", e);
+        }
+        return out.toByteArray();
+    }
+
+    public static void write(Path file, JmmNode root, MySymbolTable table) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(out, root, table);
+        }
+    }
+
+    public static void write(OutputStream out, JmmNode root, MySymbolTable table) throws IOException {
+        AstSerializer serializer = new AstSerializer();
+
+        // The body goes first to a buffer, so that the string table is complete when it is written
+        Buffer body = new Buffer();
+        if (table != null) {
+            serializer.writeSymbolTable(body, table);
+        }
+        serializer.writeNode(body, root);
+
+        Buffer header = new Buffer();
+        writeInt(header, MAGIC);
+        header.write(VERSION);
+        header.write(table != null ? HAS_SYMBOL_TABLE : 0);
+        writeVarint(header, serializer.strings.size());
+        for (String string : serializer.strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(header, bytes.length);
+            header.write(bytes, 0, bytes.length);
+        }
+
+        out.write(header.bytes, 0, header.size);
+        out.write(body.bytes, 0, body.size);
+        out.flush();
+    }
+
+    private void writeNode(Buffer out, JmmNode node) {
+        writeString(out, node.getKind());
+        Collection<String> hierarchy = node.getHierarchy();
+        writeVarint(out, hierarchy.size());
+        for (String kind : hierarchy) {
+            writeString(out, kind);
+        }
+
+        if (node instanceof CompactJmmNode) {
+            CompactJmmNode compact = (CompactJmmNode) node;
+            writePosition(out, compact.getLineStart());
+            writePosition(out, compact.getColStart());
+            writePosition(out, compact.getLineEnd());
+            writePosition(out, compact.getColEnd());
+        } else {
+            for (String position : POSITIONS) {
+                writePosition(out, node.getOptional(position).map(Integer::parseInt).orElse(-1));
+            }
+        }
+
+        List<String> attributes = new ArrayList<>();
+        for (String attribute : node.getAttributes()) {
+            if (!POSITIONS.contains(attribute)) {
+                attributes.add(attribute);
+            }
+        }
+        writeVarint(out, attributes.size());
+        boolean refersToChildren = false;
+        for (String attribute : attributes) {
+            writeString(out, attribute);
+            refersToChildren |= writeValue(out, node, node.getObject(attribute));
+        }
+
+        List<JmmNode> children = CompactJmmNode.childrenOf(node);
+        boolean lazy = !refersToChildren && node.getHierarchy().contains("MethodDeclaration");
+        out.write(lazy ? LAZY_CHILDREN : 0);
+        writeVarint(out, children.size());
+        if (!lazy) {
+            for (JmmNode child : children) {
+                writeNode(out, child);
+            }
+            return;
+        }
+
+        Buffer childrenOut = new Buffer();
+        for (JmmNode child : children) {
+            writeNode(childrenOut, child);
+        }
+        writeVarint(out, childrenOut.size);
+        out.write(childrenOut.bytes, 0, childrenOut.size);
+    }
+
+    /**
+     * @return true if the value refers to a child of the node
+     */
+    private boolean writeValue(Buffer out, JmmNode node, Object value) {
+        if (value == null) {
+            out.write(VALUE_NULL);
+            return false;
+        }
+
+        if (value instanceof List) {
+            List<?> values = (List<?>) value;
+            out.write(VALUE_LIST);
+            writeVarint(out, values.size());
+            boolean refersToChildren = false;
+            for (Object element : values) {
+                refersToChildren |= writeValue(out, node, element);
+            }
+            return refersToChildren;
+        }
+
+        if (value instanceof JmmNode) {
+            int index = indexOfChild(node, (JmmNode) value);
+            if (index != -1) {
+                out.write(VALUE_CHILD);
+                writeVarint(out, index);
+                return true;
+            }
+        }
+
+        out.write(VALUE_STRING);
+        writeString(out, value.toString());
+        return false;
+    }
+
+    private static int indexOfChild(JmmNode node, JmmNode child) {
+        List<JmmNode> children = CompactJmmNode.childrenOf(node);
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i) == child) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeSymbolTable(Buffer out, MySymbolTable table) {
+        writeVarint(out, table.getImports().size());
+        for (String importName : table.getImports()) {
+            writeString(out, importName);
+        }
+        writeString(out, table.getClassName());
+        writeString(out, table.getSuper());
+        writeSymbols(out, table.getFields());
+
+        Collection<MethodDefinition> methods = table.getMethodDefinitions();
+        writeVarint(out, methods.size());
+        for (MethodDefinition method : methods) {
+            writeString(out, method.getMethodName());
+            writeType(out, method.getReturnType());
+            writeSymbols(out, method.getParameters());
+            writeSymbols(out, method.getLocalVariables());
+        }
+    }
+
+    private void writeSymbols(Buffer out, List<Symbol> symbols) {
+        writeVarint(out, symbols.size());
+        for (Symbol symbol : symbols) {
+            writeType(out, symbol.getType());
+            writeString(out, symbol.getName());
+        }
+    }
+
+    private void writeType(Buffer out, Type type) {
+        writeString(out, type.getName());
+        out.write(type.isArray() ? 1 : 0);
+    }
+
+    // Strings are written as their index in the string table plus one, 0 is null
+    private void writeString(Buffer out, String string) {
+        if (string == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, strings.computeIfAbsent(string, key -> strings.size()) + 1);
+    }
+
+    // Absent positions are -1, so all positions are written plus one
+    private static void writePosition(Buffer out, int position) {
+        writeVarint(out, position + 1);
+    }
+
+    private static void writeVarint(Buffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeInt(Buffer out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    // Growable byte array, without the synchronization of ByteArrayOutputStream
+    private static class Buffer {
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        private void write(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        private void write(byte[] source, int offset, int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + length));
+            }
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+    }
+}
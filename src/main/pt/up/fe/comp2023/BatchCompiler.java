@@ -0,0 +1,194 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many .jmm files in a single JVM, using a fixed pool of workers.
+ *
+ * The target can be a directory (searched recursively for .jmm files), a glob such as "test/**&#47;*.jmm",
+ * or a list file prefixed with '@' that contains one path per line.
+ */
+public class BatchCompiler {
+
+    private final Map<String, String> config;
+    private final int numThreads;
+    private final Optional<OutputWriter> outputWriter;
+
+    public BatchCompiler(Map<String, String> config) {
+        this.config = config;
+        this.outputWriter = OutputWriter.fromConfig(config);
+        this.numThreads = Integer.parseInt(config.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    public static List<File> collectInputs(String target) {
+        if (target.startsWith("@")) {
+            File listFile = new File(target.substring(1));
+            return SpecsIo.read(listFile).lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(File::new)
+                    .collect(Collectors.toList());
+        }
+
+        File targetFile = new File(target);
+        if (targetFile.isDirectory()) {
+            return walk(targetFile.toPath(), path -> path.toString().endsWith(".jmm"));
+        }
+        if (targetFile.isFile()) {
+            return List.of(targetFile);
+        }
+
+        // Treat the target as a glob, searching from the longest prefix without wildcards
+        Path root = Paths.get("");
+        for (Path part : Paths.get(target)) {
+            if (part.toString().matches(".*[*?\\[{].*")) {
+                break;
+            }
+            root = root.resolve(part);
+        }
+        if (Paths.get(target).isAbsolute()) {
+            root = Paths.get(target).getRoot().resolve(root);
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + target);
+        return walk(root.toString().isEmpty() ? Paths.get(".") : root, matcher::matches);
+    }
+
+    private static List<File> walk(Path root, PathMatcher matcher) {
+        if (!Files.isDirectory(root)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> root.equals(Paths.get(".")) ? root.relativize(path) : path)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compiles all the given files and returns one summary per file, in the same order as the inputs.
+     */
+    public List<FileSummary> compile(List<File> inputFiles) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, inputFiles.size())));
+        try {
+            List<Future<FileSummary>> futures = new ArrayList<>();
+            for (File inputFile : inputFiles) {
+                futures.add(executor.submit(() -> compile(inputFile)));
+            }
+
+            List<FileSummary> summaries = new ArrayList<>();
+            for (Future<FileSummary> future : futures) {
+                summaries.add(future.get());
+            }
+            return summaries;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch compilation was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unexpected failure during batch compilation", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private FileSummary compile(File inputFile) {
+        long start = System.nanoTime();
+        Map<String, String> fileConfig = new HashMap<>(config);
+        fileConfig.put("inputFile", inputFile.getPath());
+
+        if (StageMetrics.isEnabled(config)) {
+            StageMetrics.begin(inputFile.getPath());
+        }
+
+        List<Report> reports;
+        try {
+            CompilationOutput output = JmmCompiler.compile(inputFile.toPath(), fileConfig);
+            reports = output.getReports();
+            if (outputWriter.isPresent()) {
+                outputWriter.get().write(output);
+            }
+        } catch (Exception e) {
+            reports = List.of(Report.newError(Stage.OTHER, -1, -1, "Could not compile input file: " + e, e));
+        }
+
+        StageMetrics metrics = StageMetrics.isEnabled(config) ? StageMetrics.end() : null;
+        return new FileSummary(inputFile, reports, System.nanoTime() - start, metrics);
+    }
+
+    public static class FileSummary {
+        private final File file;
+        private final List<Report> reports;
+        private final long elapsedNanos;
+        private final StageMetrics metrics;
+
+        public FileSummary(File file, List<Report> reports, long elapsedNanos, StageMetrics metrics) {
+            this.file = file;
+            this.reports = reports;
+            this.elapsedNanos = elapsedNanos;
+            this.metrics = metrics;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public List<Report> getReports() {
+            return reports;
+        }
+
+        public StageMetrics getMetrics() {
+            return metrics;
+        }
+
+        public boolean hasErrors() {
+            return reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR);
+        }
+
+        public String print() {
+            StringBuilder summary = new StringBuilder();
+            summary.append(file.getPath())
+                    .append(": ")
+                    .append(hasErrors() ? "FAILED" : "OK")
+                    .append(" (")
+                    .append(count(ReportType.ERROR)).append(" errors, ")
+                    .append(count(ReportType.WARNING)).append(" warnings, ")
+                    .append(elapsedNanos / 1_000_000).append(" ms)\n");
+            for (Report report : reports) {
+                summary.append("\t").append(report).append("\n");
+            }
+            return summary.toString();
+        }
+
+        private long count(ReportType type) {
+            return reports.stream().filter(report -> report.getType() == type).count();
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.NodePosition;
+import pt.up.fe.specs.util.SpecsCheck;
+import pt.up.fe.specs.util.SpecsSystem;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.stream.Collectors;
+
+/**
+ * JmmNode with a typed kind, attributes in slots and positions as ints.
+ *
+ * The attributes known by the {@link NodeKind} of the node are kept in an array indexed by slot, anything else goes to
+ * a map that is only created when needed. Positions are stored as ints and only turned into Strings when read through
+ * the JmmNode interface. Children are kept in an array. As the JmmNode contract requires, {@link #getChildren()}
+ * returns a copy of it, and {@link #getChildrenView()} a read-only view for code that does not change the tree while
+ * going through it. The visitors and the serializer read children through {@link #childrenOf(JmmNode)}, which uses the
+ * view when it can.
+ */
+public class CompactJmmNode implements JmmNode {
+
+    private static final JmmNode[] NO_CHILDREN = new JmmNode[0];
+    private static final Object[] NO_SLOTS = new Object[0];
+    private static final int NO_POSITION = -1;
+
+    private final String kind;
+    private final NodeKind nodeKind;
+    private final Collection<String> hierarchy;
+    private final Object[] slots;
+    private Map<String, Object> otherAttributes;
+
+    private int lineStart = NO_POSITION;
+    private int colStart = NO_POSITION;
+    private int lineEnd = NO_POSITION;
+    private int colEnd = NO_POSITION;
+
+    private JmmNode parent;
+    private JmmNode[] children = NO_CHILDREN;
+    private int numChildren = 0;
+    private List<JmmNode> childrenView;
+
+    // Decodes the children the first time they are needed, for trees read lazily by AstFile. Set to null once the
+    // children are loaded, loading is guarded by this node
+    private volatile Runnable childrenLoader;
+    private boolean loadingChildren;
+
+    public CompactJmmNode(NodeKind nodeKind) {
+        this(nodeKind.getKind(), nodeKind.getHierarchy());
+    }
+
+    /**
+     * Kinds that are not in {@link NodeKind} are accepted too, all their attributes are then kept in the map.
+     */
+    public CompactJmmNode(String kind, Collection<String> hierarchy) {
+        this.kind = kind;
+        this.nodeKind = NodeKind.fromKind(kind);
+        this.hierarchy = hierarchy;
+        this.slots = nodeKind == null || nodeKind.getNumSlots() == 0 ? NO_SLOTS : new Object[nodeKind.getNumSlots()];
+    }
+
+    /**
+     * @return the kind of the node, or null if it is not one of the kinds of the grammar
+     */
+    public NodeKind getNodeKind() {
+        return nodeKind;
+    }
+
+    @Override
+    public String getKind() {
+        return kind;
+    }
+
+    @Override
+    public Collection<String> getHierarchy() {
+        return hierarchy;
+    }
+
+    public void setPosition(int lineStart, int colStart, int lineEnd, int colEnd) {
+        this.lineStart = lineStart;
+        this.colStart = colStart;
+        this.lineEnd = lineEnd;
+        this.colEnd = colEnd;
+    }
+
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    public int getColStart() {
+        return colStart;
+    }
+
+    public int getLineEnd() {
+        return lineEnd;
+    }
+
+    public int getColEnd() {
+        return colEnd;
+    }
+
+    // Attributes
+
+    @Override
+    public Collection<String> getAttributes() {
+        List<String> attributes = new ArrayList<>();
+        if (lineStart != NO_POSITION) {
+            attributes.add(NodePosition.LINE_START.getKey());
+        }
+        if (colStart != NO_POSITION) {
+            attributes.add(NodePosition.COL_START.getKey());
+        }
+        if (lineEnd != NO_POSITION) {
+            attributes.add(NodePosition.LINE_END.getKey());
+        }
+        if (colEnd != NO_POSITION) {
+            attributes.add(NodePosition.COL_END.getKey());
+        }
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                attributes.add(nodeKind.getSlotName(i));
+            }
+        }
+        if (otherAttributes != null) {
+            attributes.addAll(otherAttributes.keySet());
+        }
+        return attributes;
+    }
+
+    @Override
+    public boolean hasAttribute(String attribute) {
+        return find(attribute) != null;
+    }
+
+    @Override
+    public void putObject(String attribute, Object value) {
+        if (setPosition(attribute, value)) {
+            return;
+        }
+
+        int slot = nodeKind == null ? -1 : nodeKind.getSlot(attribute);
+        if (slot != -1) {
+            slots[slot] = value;
+            return;
+        }
+
+        if (otherAttributes == null) {
+            otherAttributes = new HashMap<>(4);
+        }
+        otherAttributes.put(attribute, value);
+    }
+
+    private boolean setPosition(String attribute, Object value) {
+        if (!isPosition(attribute)) {
+            return false;
+        }
+
+        int position = value == null ? NO_POSITION : Integer.parseInt(value.toString());
+        switch (attribute) {
+            case "lineStart" -> lineStart = position;
+            case "colStart" -> colStart = position;
+            case "lineEnd" -> lineEnd = position;
+            default -> colEnd = position;
+        }
+        return true;
+    }
+
+    private static boolean isPosition(String attribute) {
+        return attribute.equals("lineStart") || attribute.equals("colStart") || attribute.equals("lineEnd")
+                || attribute.equals("colEnd");
+    }
+
+    @Override
+    public Object getObject(String attribute) {
+        Object value = find(attribute);
+        SpecsCheck.checkNotNull(value, () -> "Node " + getKind() + " does not contain attribute '" + attribute + "'");
+        return value;
+    }
+
+    @Override
+    public Optional<Object> getOptionalObject(String attribute) {
+        return Optional.ofNullable(find(attribute));
+    }
+
+    private Object find(String attribute) {
+        if (nodeKind != null) {
+            int slot = nodeKind.getSlot(attribute);
+            if (slot != -1) {
+                return slots[slot];
+            }
+        }
+
+        if (isPosition(attribute)) {
+            int position = switch (attribute) {
+                case "lineStart" -> lineStart;
+                case "colStart" -> colStart;
+                case "lineEnd" -> lineEnd;
+                default -> colEnd;
+            };
+            return position == NO_POSITION ? null : Integer.toString(position);
+        }
+
+        return otherAttributes == null ? null : otherAttributes.get(attribute);
+    }
+
+    // Tree
+
+    @Override
+    public JmmNode getJmmParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(JmmNode parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public void removeParent() {
+        this.parent = null;
+    }
+
+    /**
+     * Leaves the children to be added by the given loader, which runs the first time any child is accessed.
+     */
+    void setChildrenLoader(Runnable childrenLoader) {
+        this.childrenLoader = childrenLoader;
+    }
+
+    /**
+     * Runs the children loader once, even if several threads read the node at the same time. The loader itself adds
+     * the children, which comes back here on the same thread and must not run it again.
+     */
+    private void loadChildren() {
+        if (childrenLoader == null) {
+            return;
+        }
+        synchronized (this) {
+            if (childrenLoader == null || loadingChildren) {
+                return;
+            }
+            loadingChildren = true;
+            try {
+                childrenLoader.run();
+            } finally {
+                loadingChildren = false;
+                childrenLoader = null;
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the list of children, which can be kept while children are added or removed
+     */
+    @Override
+    public List<JmmNode> getChildren() {
+        loadChildren();
+        return new ArrayList<>(Arrays.asList(children).subList(0, numChildren));
+    }
+
+    /**
+     * @return a read-only view of the children, without copying them. The view changes if children are added or
+     * removed later, so it must not be iterated while changing them.
+     */
+    public List<JmmNode> getChildrenView() {
+        if (childrenView == null) {
+            childrenView = new ChildrenView();
+        }
+        return childrenView;
+    }
+
+    /**
+     * @return the read-only view of the children of a CompactJmmNode, or the copy returned by getChildren for any
+     * other node. For loops that only read the tree.
+     */
+    public static List<JmmNode> childrenOf(JmmNode node) {
+        return node instanceof CompactJmmNode ? ((CompactJmmNode) node).getChildrenView() : node.getChildren();
+    }
+
+    @Override
+    public JmmNode getJmmChild(int index) {
+        loadChildren();
+        if (index >= numChildren) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + numChildren + " children");
+        }
+        return children[index];
+    }
+
+    @Override
+    public int getNumChildren() {
+        loadChildren();
+        return numChildren;
+    }
+
+    @Override
+    public void add(JmmNode child) {
+        add(child, numChildren);
+    }
+
+    @Override
+    public void add(JmmNode child, int index) {
+        loadChildren();
+        if (index < 0 || index > numChildren) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + numChildren + " children");
+        }
+        if (numChildren == children.length) {
+            children = Arrays.copyOf(children, Math.max(2, numChildren * 2));
+        }
+        System.arraycopy(children, index, children, index + 1, numChildren - index);
+        children[index] = child;
+        numChildren++;
+        child.setParent(this);
+    }
+
+    @Override
+    public JmmNode removeJmmChild(int index) {
+        loadChildren();
+        if (index >= numChildren) {
+            System.out.println("[WARNING] Tried to remove child at index " + index + ", but node only has "
+                    + numChildren + " children");
+            return null;
+        }
+
+        JmmNode removed = children[index];
+        System.arraycopy(children, index + 1, children, index, numChildren - index - 1);
+        children[--numChildren] = null;
+        removed.removeParent();
+        return removed;
+    }
+
+    @Override
+    public int removeJmmChild(JmmNode node) {
+        int index = indexOf(node);
+        if (index != -1) {
+            removeJmmChild(index);
+            return index;
+        }
+
+        System.out.println("[WARNING] Tried to remove child from node, but could not find it.\nChild:" + node
+                + "\nParent:" + this);
+        return -1;
+    }
+
+    @Override
+    public void delete() {
+        if (parent == null) {
+            System.out.println("[WARNING] Tried to remove itself from the tree, but node has no parent");
+            return;
+        }
+        parent.removeJmmChild(this);
+    }
+
+    @Override
+    public void setChild(JmmNode newNode, int index) {
+        JmmNode currentChild = getJmmChild(index);
+        if (newNode == currentChild) {
+            return;
+        }
+        if (newNode.getJmmParent() != null) {
+            newNode.getJmmParent().removeJmmChild(newNode);
+        }
+
+        // Removing the new node may have moved the child being replaced, if both were children of this node
+        children[indexOf(currentChild)] = newNode;
+        newNode.setParent(this);
+        currentChild.removeParent();
+    }
+
+    private int indexOf(JmmNode child) {
+        loadChildren();
+        for (int i = 0; i < numChildren; i++) {
+            if (children[i] == child) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a copy of this node and all nodes below it, with the same attributes. Attributes that refer to nodes
+     * below this one, such as nameType in Parameter, refer to their copies.
+     */
+    public CompactJmmNode copy() {
+        Map<JmmNode, JmmNode> copies = new IdentityHashMap<>();
+        CompactJmmNode copy = copy(copies);
+        copy.remapAttributes(copies);
+        return copy;
+    }
+
+    private CompactJmmNode copy(Map<JmmNode, JmmNode> copies) {
+        loadChildren();
+        CompactJmmNode copy = new CompactJmmNode(kind, hierarchy);
+        copies.put(this, copy);
+        copy.setPosition(lineStart, colStart, lineEnd, colEnd);
+        System.arraycopy(slots, 0, copy.slots, 0, slots.length);
+        if (otherAttributes != null) {
+            copy.otherAttributes = new HashMap<>(otherAttributes);
+        }
+        for (int i = 0; i < numChildren; i++) {
+            JmmNode child = children[i];
+            copy.add(child instanceof CompactJmmNode ? ((CompactJmmNode) child).copy(copies) : child);
+        }
+        return copy;
+    }
+
+    // Only called on copies, whose children were all created by copy and so are loaded
+    private void remapAttributes(Map<JmmNode, JmmNode> copies) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = remap(slots[i], copies);
+        }
+        if (otherAttributes != null) {
+            otherAttributes.replaceAll((attribute, value) -> remap(value, copies));
+        }
+        for (int i = 0; i < numChildren; i++) {
+            if (children[i] instanceof CompactJmmNode) {
+                ((CompactJmmNode) children[i]).remapAttributes(copies);
+            }
+        }
+    }
+
+    private static Object remap(Object value, Map<JmmNode, JmmNode> copies) {
+        if (value instanceof JmmNode) {
+            return copies.getOrDefault(value, (JmmNode) value);
+        }
+        if (value instanceof List) {
+            List<Object> values = new ArrayList<>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                values.add(remap(element, copies));
+            }
+            return values;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder(kind);
+
+        String attributes = getAttributes().stream()
+                .filter(attribute -> !isPosition(attribute))
+                .map(attribute -> attribute + ": " + find(attribute))
+                .collect(Collectors.joining(", ", " (", ")"));
+        if (!attributes.equals(" ()")) {
+            string.append(attributes);
+        }
+
+        if (SpecsSystem.isDebug() && lineStart != NO_POSITION) {
+            string.append(" ").append(lineStart).append(":").append(colStart).append("->").append(lineEnd)
+                    .append(":").append(colEnd);
+        }
+        return string.toString();
+    }
+
+    private class ChildrenView extends AbstractList<JmmNode> implements RandomAccess {
+        @Override
+        public JmmNode get(int index) {
+            return getJmmChild(index);
+        }
+
+        @Override
+        public int size() {
+            return getNumChildren();
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package pt.up.fe.comp2023;
+
+import jasmin.ClassFile;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.specs.util.SpecsLogs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent, content-addressed cache of compilation outputs.
+ *
+ * Entries are keyed by a SHA-256 of the source, a fingerprint of the compiler itself, the imported classes and the
+ * superclass that could be found on the library path, with their own superclasses, and the config options that change
+ * the generated code. The fingerprint covers the class files of the compiler and of the libraries it generates code
+ * with, so that a new build of the compiler does not reuse the outputs of an older one. Each entry is a single file in the {@link CompilerProtocol} output
+ * format, written to a temporary file and atomically moved into place. The last-modified time of an entry is its last
+ * use, and the least recently used entries are evicted when the cache grows above its size limit.
+ */
+public class CompilationCache {
+
+    public static final String DEFAULT_DIR = ".jmm-cache";
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final List<String> KEY_OPTIONS = List.of("optimize", "registerAllocation", "debug");
+    private static final Pattern IMPORT = Pattern.compile("import\\s+([\\w$]+(?:\\s*\\.\\s*[\\w$]+)*)\\s*;");
+    private static final Pattern EXTENDS = Pattern.compile("class\\s+[\\w$]+\\s+extends\\s+([\\w$]+)");
+    // The compiler, the jmm framework and the Jasmin assembler, each from the jar or directory that it was loaded from
+    private static final List<Class<?>> COMPILER_CLASSES = List.of(CompilationCache.class, JmmNode.class,
+            ClassFile.class);
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    // One instance per directory, so that counters and the size estimate are shared by every caller in the JVM
+    private static final Map<Path, CompilationCache> CACHES = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong currentBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private CompilationCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(directory);
+            currentBytes.set(listEntries().stream().mapToLong(CompilationCache::sizeOf).sum());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open compilation cache at " + directory, e);
+        }
+    }
+
+    public static CompilationCache open(Path directory, long maxBytes) {
+        return CACHES.computeIfAbsent(directory.toAbsolutePath().normalize(), dir -> new CompilationCache(dir, maxBytes));
+    }
+
+    /**
+     * Returns the cache selected by the options "cache" (use the default directory) or "cacheDir", if any.
+     */
+    public static Optional<CompilationCache> fromConfig(Map<String, String> config) {
+        String dir = config.get("cacheDir");
+        if (dir == null && !Boolean.parseBoolean(config.getOrDefault("cache", "false"))) {
+            return Optional.empty();
+        }
+
+        long maxBytes = Long.parseLong(config.getOrDefault("cacheMaxBytes", String.valueOf(DEFAULT_MAX_BYTES)));
+        return Optional.of(open(Paths.get(dir != null ? dir : DEFAULT_DIR), maxBytes));
+    }
+
+    public String key(String code, Map<String, String> config) {
+        MessageDigest digest = newDigest();
+        update(digest, code);
+        digest.update(CompilerFingerprint.VALUE);
+
+        Path libPath = Paths.get(config.getOrDefault("libPath", JasminAssembler.DEFAULT_LIB_PATH));
+        Set<String> hashedClasses = new HashSet<>();
+        // The binary name of each import, by simple name
+        Map<String, String> importNames = new HashMap<>();
+        Matcher imports = IMPORT.matcher(code);
+        while (imports.find()) {
+            String importName = imports.group(1).replaceAll("\\s", "");
+            update(digest, importName);
+            updateClass(digest, libPath, importName, hashedClasses);
+            importNames.put(importName.substring(importName.lastIndexOf('.') + 1), importName);
+        }
+
+        Matcher superClass = EXTENDS.matcher(code);
+        if (superClass.find()) {
+            update(digest, "extends " + superClass.group(1));
+            updateClass(digest, libPath, importNames.getOrDefault(superClass.group(1), superClass.group(1)),
+                    hashedClasses);
+        }
+
+        for (String option : KEY_OPTIONS) {
+            update(digest, option + "=" + config.get(option));
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Hashes the class file of a library class, if there is one, and those of its superclasses.
+     *
+     * @param binaryName the name of the class with its package, e.g. "pkg.Foo" for libPath/pkg/Foo.class
+     */
+    private static void updateClass(MessageDigest digest, Path libPath, String binaryName, Set<String> hashedClasses) {
+        String name = binaryName;
+        while (name != null && hashedClasses.add(name)) {
+            Path classFile = libPath.resolve(name.replace('.', '/') + ".class");
+            if (!Files.isRegularFile(classFile)) {
+                return;
+            }
+
+            byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(classFile);
+            } catch (IOException e) {
+                SpecsLogs.warn("Could not read library class " + classFile + ": " + e.getMessage());
+                return;
+            }
+            update(digest, name);
+            digest.update(bytes);
+
+            try {
+                name = ImportResolver.readClass(new DataInputStream(new ByteArrayInputStream(bytes)))
+                        .getSuperName().orElse(null);
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    public Optional<CompilationOutput> get(String key) {
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            CompilationOutput output = CompilerProtocol.readOutput(in);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return Optional.of(output);
+        } catch (IOException e) {
+            // Missing, evicted concurrently or truncated entry, all of them count as a miss
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+    public void put(String key, CompilationOutput output) {
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                CompilerProtocol.writeOutput(out, output);
+            }
+
+            long previousSize = Files.exists(entry) ? sizeOf(entry) : 0;
+            long size = sizeOf(temp);
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            currentBytes.addAndGet(size - previousSize);
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not write compilation cache entry " + entry + ": " + e.getMessage());
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
+            return;
+        }
+
+        if (currentBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * The size counted by {@link #put} is only an estimate, which concurrent writes of the same key or other processes
+     * sharing the directory make drift. It only decides when to come here, where the size is summed again from the
+     * entries on disk before anything is evicted.
+     */
+    private synchronized void evict() {
+        if (currentBytes.get() <= maxBytes) {
+            return;
+        }
+
+        List<Path> entries = listEntries().stream()
+                .sorted(Comparator.comparing(CompilationCache::lastUsed))
+                .collect(Collectors.toList());
+        long[] sizes = new long[entries.size()];
+        long total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = sizeOf(entries.get(i));
+            total += sizes[i];
+        }
+
+        // Evict down to 90% of the limit, so that the next few writes do not trigger another scan
+        long target = maxBytes / 10 * 9;
+        for (int i = 0; i < sizes.length && total > target; i++) {
+            try {
+                if (Files.deleteIfExists(entries.get(i))) {
+                    total -= sizes[i];
+                    evictions.incrementAndGet();
+                }
+            } catch (IOException e) {
+                SpecsLogs.warn("Could not evict compilation cache entry " + entries.get(i) + ": " + e.getMessage());
+            }
+        }
+        currentBytes.set(total);
+    }
+
+    private List<Path> listEntries() {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getSizeBytes() {
+        return currentBytes.get();
+    }
+
+    public String printStats() {
+        return "cache " + directory + ": " + hits.get() + " hits, " + misses.get() + " misses, "
+                + evictions.get() + " evictions, " + currentBytes.get() / 1024 + " KB";
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastUsed(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    // Computed once per JVM, the first time a key is needed
+    private static class CompilerFingerprint {
+        private static final byte[] VALUE = compute();
+
+        private static byte[] compute() {
+            MessageDigest digest = newDigest();
+            Set<Path> locations = new HashSet<>();
+            for (Class<?> compilerClass : COMPILER_CLASSES) {
+                CodeSource source = compilerClass.getProtectionDomain().getCodeSource();
+                try {
+                    Path location = Paths.get(source.getLocation().toURI());
+                    if (locations.add(location)) {
+                        updateLocation(digest, location);
+                    }
+                } catch (Exception e) {
+                    // Without it, entries written by another build of the compiler could be reused
+                    SpecsLogs.warn("Could not fingerprint the classes of " + compilerClass.getName() + ": " + e);
+                    update(digest, compilerClass.getName());
+                }
+            }
+            return digest.digest();
+        }
+
+        private static void updateLocation(MessageDigest digest, Path location) throws IOException {
+            if (Files.isRegularFile(location)) {
+                digest.update(Files.readAllBytes(location));
+                return;
+            }
+
+            List<Path> classFiles;
+            try (Stream<Path> paths = Files.walk(location)) {
+                classFiles = paths.filter(path -> path.toString().endsWith(".class"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            for (Path classFile : classFiles) {
+                update(digest, location.relativize(classFile).toString());
+                digest.update(Files.readAllBytes(classFile));
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The state of one compilation: its input, its config and the result of every stage that has already run.
+ *
+ * Results are filled in by {@link CompilationPipeline}, which never runs a stage twice for the same context.
+ */
+public class CompilationContext {
+    private final Path sourceFile;
+    private String code;
+    private final Map<String, String> config;
+
+    private JmmParserResult parserResult;
+    private JmmSemanticsResult semanticsResult;
+    private OllirResult ollirResult;
+    private JasminResult jasminResult;
+    private byte[] classBytes;
+
+    // Reports that do not belong to any stage result, e.g. uncaught exceptions
+    private final List<Report> extraReports = new ArrayList<>();
+
+    public CompilationContext(String code, Map<String, String> config) {
+        this.sourceFile = null;
+        this.code = code;
+        this.config = config;
+    }
+
+    /**
+     * A compilation of the given file. The parser reads the file itself, its contents are only loaded as a String if
+     * {@link #getCode()} is called.
+     */
+    public CompilationContext(Path sourceFile, Map<String, String> config) {
+        this.sourceFile = sourceFile;
+        this.code = null;
+        this.config = config;
+    }
+
+    public Optional<Path> getSourceFile() {
+        return Optional.ofNullable(sourceFile);
+    }
+
+    public String getCode() {
+        if (code == null) {
+            code = SpecsIo.read(sourceFile.toFile());
+        }
+        return code;
+    }
+
+    public Map<String, String> getConfig() {
+        return config;
+    }
+
+    public JmmParserResult getParserResult() {
+        return parserResult;
+    }
+
+    void setParserResult(JmmParserResult parserResult) {
+        this.parserResult = parserResult;
+    }
+
+    public JmmSemanticsResult getSemanticsResult() {
+        return semanticsResult;
+    }
+
+    void setSemanticsResult(JmmSemanticsResult semanticsResult) {
+        this.semanticsResult = semanticsResult;
+    }
+
+    public OllirResult getOllirResult() {
+        return ollirResult;
+    }
+
+    void setOllirResult(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+    }
+
+    public JasminResult getJasminResult() {
+        return jasminResult;
+    }
+
+    void setJasminResult(JasminResult jasminResult) {
+        this.jasminResult = jasminResult;
+    }
+
+    public byte[] getClassBytes() {
+        return classBytes;
+    }
+
+    void setClassBytes(byte[] classBytes) {
+        this.classBytes = classBytes;
+    }
+
+    void addReport(Report report) {
+        extraReports.add(report);
+    }
+
+    /**
+     * @return the reports of the last stage that ran, which already include the reports of the stages before it
+     */
+    public List<Report> getReports() {
+        List<Report> reports = new ArrayList<>();
+        if (jasminResult != null) {
+            reports.addAll(jasminResult.getReports());
+        } else if (ollirResult != null) {
+            reports.addAll(ollirResult.getReports());
+        } else if (semanticsResult != null) {
+            reports.addAll(semanticsResult.getReports());
+        } else if (parserResult != null) {
+            reports.addAll(parserResult.getReports());
+        }
+        reports.addAll(extraReports);
+        return reports;
+    }
+
+    public boolean hasErrors() {
+        return getReports().stream().anyMatch(report -> report.getType() == ReportType.ERROR);
+    }
+
+    public CompilationOutput toOutput() {
+        String className = semanticsResult != null ? semanticsResult.getSymbolTable().getClassName() : null;
+        String ollirCode = ollirResult != null ? ollirResult.getOllirCode() : null;
+        String jasminCode = jasminResult != null ? jasminResult.getJasminCode() : null;
+        return new CompilationOutput(className, ollirCode, jasminCode, getReports());
+    }
+}
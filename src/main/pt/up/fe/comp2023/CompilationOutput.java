@@ -0,0 +1,43 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+
+import java.util.List;
+
+/**
+ * The textual outputs of compiling a single .jmm file, detached from the ASTs and symbol tables that produced them.
+ */
+public class CompilationOutput {
+    private final String className;
+    private final String ollirCode;
+    private final String jasminCode;
+    private final List<Report> reports;
+
+    public CompilationOutput(String className, String ollirCode, String jasminCode, List<Report> reports) {
+        this.className = className;
+        this.ollirCode = ollirCode;
+        this.jasminCode = jasminCode;
+        this.reports = reports;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getOllirCode() {
+        return ollirCode;
+    }
+
+    public String getJasminCode() {
+        return jasminCode;
+    }
+
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    public boolean hasErrors() {
+        return reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR);
+    }
+}
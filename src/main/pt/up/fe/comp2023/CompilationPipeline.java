@@ -0,0 +1,220 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.analysis.JmmAnalysis;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.jasmin.JasminBackend;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.JmmOptimization;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParser;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2023.Ollir.MyOptimizer;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Runs the compiler stages over a {@link CompilationContext}.
+ *
+ * Every stage runs at most once per context: asking for a later stage runs the missing earlier ones and reuses the
+ * results that are already in the context. A stage only runs if the stages before it produced no errors.
+ */
+public class CompilationPipeline {
+
+    public enum Step {
+        PARSE,
+        ANALYSIS,
+        OLLIR,
+        JASMIN,
+        ASSEMBLY
+    }
+
+    private final Lazy<JmmParser> parser;
+    private final Lazy<JmmAnalysis> analysis;
+    private final Lazy<JmmOptimization> optimization;
+    private final Lazy<JasminBackend> backend;
+
+    public CompilationPipeline() {
+        // Lambdas instead of constructor references, so that the classes of each stage (and the ANTLR, OLLIR and
+        // Jasmin classes they use) are only loaded when that stage first runs
+        this(() -> new SimpleParser(), () -> new MyAnalyser(), () -> new MyOptimizer(), () -> new JasminGenerator());
+    }
+
+    public CompilationPipeline(JmmParser parser, JmmAnalysis analysis, JmmOptimization optimization,
+                               JasminBackend backend) {
+        this(() -> parser, () -> analysis, () -> optimization, () -> backend);
+    }
+
+    public CompilationPipeline(Supplier<JmmParser> parser, Supplier<JmmAnalysis> analysis,
+                               Supplier<JmmOptimization> optimization, Supplier<JasminBackend> backend) {
+        this.parser = new Lazy<>(parser);
+        this.analysis = new Lazy<>(analysis);
+        this.optimization = new Lazy<>(optimization);
+        this.backend = new Lazy<>(backend);
+    }
+
+    public CompilationContext compile(String code, Map<String, String> config) {
+        return compile(code, config, Step.JASMIN);
+    }
+
+    public CompilationContext compile(String code, Map<String, String> config, Step lastStep) {
+        CompilationContext context = new CompilationContext(code, config);
+        runUntil(context, lastStep);
+        return context;
+    }
+
+    public CompilationContext compile(Path sourceFile, Map<String, String> config, Step lastStep) {
+        CompilationContext context = new CompilationContext(sourceFile, config);
+        runUntil(context, lastStep);
+        return context;
+    }
+
+    /**
+     * Runs all stages up to and including the given one.
+     *
+     * @return true if the last step produced a result
+     */
+    public boolean runUntil(CompilationContext context, Step lastStep) {
+        return switch (lastStep) {
+            case PARSE -> parse(context).isPresent();
+            case ANALYSIS -> analyse(context).isPresent();
+            case OLLIR -> toOllir(context).isPresent();
+            case JASMIN -> toJasmin(context).isPresent();
+            case ASSEMBLY -> assemble(context).isPresent();
+        };
+    }
+
+    public Optional<JmmParserResult> parse(CompilationContext context) {
+        if (context.getParserResult() == null) {
+            JmmParserResult result = run(context, () -> parseInput(context));
+            if (result == null) {
+                return Optional.empty();
+            }
+            context.setParserResult(result);
+        }
+
+        if (context.getParserResult().getRootNode() == null || context.hasErrors()) {
+            return Optional.empty();
+        }
+        return Optional.of(context.getParserResult());
+    }
+
+    private JmmParserResult parseInput(CompilationContext context) {
+        // SimpleParser lexes files straight from their bytes, other parsers need the contents as a String
+        if (context.getSourceFile().isPresent() && parser.get() instanceof SimpleParser) {
+            return ((SimpleParser) parser.get()).parse(context.getSourceFile().get(), context.getConfig());
+        }
+        return parser.get().parse(context.getCode(), context.getConfig());
+    }
+
+    public Optional<JmmSemanticsResult> analyse(CompilationContext context) {
+        if (context.getSemanticsResult() == null) {
+            Optional<JmmParserResult> parserResult = parse(context);
+            if (parserResult.isEmpty()) {
+                return Optional.empty();
+            }
+
+            JmmSemanticsResult result = run(context, () -> analysis.get().semanticAnalysis(parserResult.get()));
+            if (result == null) {
+                return Optional.empty();
+            }
+            context.setSemanticsResult(result);
+        }
+
+        return context.hasErrors() ? Optional.empty() : Optional.of(context.getSemanticsResult());
+    }
+
+    public Optional<OllirResult> toOllir(CompilationContext context) {
+        if (context.getOllirResult() == null) {
+            Optional<JmmSemanticsResult> semanticsResult = analyse(context);
+            if (semanticsResult.isEmpty()) {
+                return Optional.empty();
+            }
+
+            OllirResult result = run(context, () -> {
+                JmmOptimization stage = optimization.get();
+                JmmSemanticsResult optimized = stage.optimize(semanticsResult.get());
+                return stage.optimize(stage.toOllir(optimized));
+            });
+            if (result == null) {
+                return Optional.empty();
+            }
+            context.setOllirResult(result);
+        }
+
+        return context.hasErrors() ? Optional.empty() : Optional.of(context.getOllirResult());
+    }
+
+    public Optional<JasminResult> toJasmin(CompilationContext context) {
+        if (context.getJasminResult() == null) {
+            Optional<OllirResult> ollirResult = toOllir(context);
+            if (ollirResult.isEmpty()) {
+                return Optional.empty();
+            }
+
+            JasminResult result = run(context, () -> backend.get().toJasmin(ollirResult.get()));
+            if (result == null) {
+                return Optional.empty();
+            }
+            context.setJasminResult(result);
+        }
+
+        return context.hasErrors() ? Optional.empty() : Optional.of(context.getJasminResult());
+    }
+
+    /**
+     * Assembles the Jasmin code in memory.
+     *
+     * @return the bytes of the class file
+     */
+    public Optional<byte[]> assemble(CompilationContext context) {
+        if (context.getClassBytes() == null) {
+            Optional<JasminResult> jasminResult = toJasmin(context);
+            if (jasminResult.isEmpty()) {
+                return Optional.empty();
+            }
+
+            String className = jasminResult.get().getClassName();
+            byte[] classBytes;
+            try {
+                classBytes = StageMetrics.measure("assembly",
+                        () -> JasminAssembler.assemble(jasminResult.get().getJasminCode(), className));
+            } catch (RuntimeException e) {
+                context.addReport(Report.newError(Stage.GENERATION, -1, -1, e.getMessage(), e));
+                return Optional.empty();
+            }
+            context.setClassBytes(classBytes);
+        }
+
+        return Optional.of(context.getClassBytes());
+    }
+
+    private static class Lazy<T> {
+        private final Supplier<T> supplier;
+        private T value;
+
+        private Lazy(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        private synchronized T get() {
+            if (value == null) {
+                value = supplier.get();
+            }
+            return value;
+        }
+    }
+
+    private static <T> T run(CompilationContext context, Supplier<T> stage) {
+        try {
+            return stage.get();
+        } catch (Exception e) {
+            context.addReport(Report.newError(Stage.OTHER, -1, -1, "Exception during compilation: " + e, e));
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends compile requests to a running {@link CompilerServer}, compiling in-process when no server is available.
+ */
+public class CompilerClient {
+
+    private static final int CONNECT_TIMEOUT_MS = 200;
+    private static final int DEFAULT_READ_TIMEOUT_MS = 60_000;
+
+    private final int port;
+    private final int readTimeoutMs;
+    private final Path tokenFile;
+
+    public CompilerClient(Map<String, String> config) {
+        this.port = Integer.parseInt(config.getOrDefault("port", String.valueOf(CompilerProtocol.DEFAULT_PORT)));
+        this.readTimeoutMs = Integer.parseInt(config.getOrDefault("readTimeout",
+                String.valueOf(DEFAULT_READ_TIMEOUT_MS)));
+        this.tokenFile = CompilerProtocol.getTokenFile(config, port);
+    }
+
+    public CompilationOutput compile(File inputFile, Map<String, String> config) {
+        Map<String, String> requestConfig = new HashMap<>(config);
+        try {
+            return request(CompilerProtocol.COMPILE_PATH, requestConfig, inputFile.getAbsolutePath());
+        } catch (IOException e) {
+            // No daemon running (or it went away, does not answer in time, or its token cannot be read), compile
+            // in this JVM instead
+            requestConfig.put("inputFile", inputFile.getPath());
+            return JmmCompiler.compile(SpecsIo.read(inputFile), requestConfig);
+        }
+    }
+
+    public boolean shutdownServer() {
+        String token;
+        try {
+            token = CompilerProtocol.readToken(tokenFile);
+        } catch (IOException e) {
+            return false;
+        }
+        try (Socket socket = connect();
+             var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            CompilerProtocol.writeRequest(out, token, CompilerProtocol.SHUTDOWN, new HashMap<>(), null);
+            return "BYE".equals(CompilerProtocol.readString(in));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private CompilationOutput request(String command, Map<String, String> config, String payload) throws IOException {
+        String token = CompilerProtocol.readToken(tokenFile);
+        try (Socket socket = connect();
+             var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            CompilerProtocol.writeRequest(out, token, command, config, payload);
+            return CompilerProtocol.readOutput(in);
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MS);
+            // A server that stopped answering must not block the client, reads then fail with a timeout
+            socket.setSoTimeout(readTimeoutMs);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+}
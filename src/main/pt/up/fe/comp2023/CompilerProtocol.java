@@ -0,0 +1,215 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wire format shared by {@link CompilerServer} and {@link CompilerClient}.
+ *
+ * A request is the token of the server, a command, the config map and a payload (the source code or a path). A
+ * response is the class name, the OLLIR and Jasmin code and the list of reports. Strings are written as a length
+ * followed by UTF-8 bytes, with -1 standing for null, so that sources are not limited to the 64KB of writeUTF.
+ *
+ * The server writes a new random token at startup to a file that only its user can read, by default
+ * ~/.jmm/server-PORT.token, and rejects requests without it, so that other users of the machine cannot use it.
+ */
+public class CompilerProtocol {
+
+    public static final int DEFAULT_PORT = 7643;
+
+    public static final String COMPILE_SOURCE = "COMPILE_SOURCE";
+    public static final String COMPILE_PATH = "COMPILE_PATH";
+    public static final String PING = "PING";
+    public static final String SHUTDOWN = "SHUTDOWN";
+
+    // Limits on what the other side may send, so that a bad length cannot make the reader allocate without bound
+    static final int MAX_STRING_BYTES = 64 * 1024 * 1024;
+    static final int MAX_ENTRIES = 64 * 1024;
+    static final int MAX_TOKEN_BYTES = 256;
+
+    // Strings are read in chunks of this size, so memory grows with the bytes that arrive, not the declared length
+    private static final int READ_CHUNK = 64 * 1024;
+
+    public static void writeRequest(DataOutputStream out, String token, String command, Map<String, String> config,
+                                    String payload) throws IOException {
+        writeString(out, token);
+        writeString(out, command);
+        out.writeInt(config.size());
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+        writeString(out, payload);
+        out.flush();
+    }
+
+    public static Path getTokenFile(Map<String, String> config, int port) {
+        String tokenFile = config.get("tokenFile");
+        if (tokenFile != null) {
+            return Paths.get(tokenFile);
+        }
+        return Paths.get(System.getProperty("user.home"), ".jmm", "server-" + port + ".token");
+    }
+
+    public static String newToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Writes the token to a new file that only the current user can read and write.
+     */
+    public static void writeToken(Path tokenFile, String token) throws IOException {
+        Path dir = tokenFile.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Files.deleteIfExists(tokenFile);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(tokenFile);
+            File file = tokenFile.toFile();
+            file.setReadable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(false, false);
+            file.setWritable(true, true);
+        }
+        Files.writeString(tokenFile, token);
+    }
+
+    public static String readToken(Path tokenFile) throws IOException {
+        return Files.readString(tokenFile).trim();
+    }
+
+    public static boolean isValidToken(String expected, String token) {
+        return token != null && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String readToken(DataInputStream in) throws IOException {
+        return readString(in, MAX_TOKEN_BYTES);
+    }
+
+    public static String readCommand(DataInputStream in) throws IOException {
+        return readString(in);
+    }
+
+    public static Map<String, String> readConfig(DataInputStream in) throws IOException {
+        int size = readCount(in);
+        Map<String, String> config = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            config.put(readString(in), readString(in));
+        }
+        return config;
+    }
+
+    public static void writeOutput(DataOutputStream out, CompilationOutput output) throws IOException {
+        writeString(out, output.getClassName());
+        writeString(out, output.getOllirCode());
+        writeString(out, output.getJasminCode());
+        out.writeInt(output.getReports().size());
+        for (Report report : output.getReports()) {
+            out.writeByte(report.getType().ordinal());
+            out.writeByte(report.getStage().ordinal());
+            out.writeInt(report.getLine());
+            out.writeInt(report.getColumn());
+            writeString(out, report.getMessage());
+        }
+        out.flush();
+    }
+
+    public static CompilationOutput readOutput(DataInputStream in) throws IOException {
+        String className = readString(in);
+        String ollirCode = readString(in);
+        String jasminCode = readString(in);
+        int numReports = readCount(in);
+        List<Report> reports = new ArrayList<>(numReports);
+        for (int i = 0; i < numReports; i++) {
+            ReportType type = readEnum(in, ReportType.values());
+            Stage stage = readEnum(in, Stage.values());
+            int line = in.readInt();
+            int column = in.readInt();
+            reports.add(new Report(type, stage, line, column, readString(in)));
+        }
+        return new CompilationOutput(className, ollirCode, jasminCode, reports);
+    }
+
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        return readString(in, MAX_STRING_BYTES);
+    }
+
+    private static String readString(DataInputStream in, int maxBytes) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > maxBytes) {
+            throw new IOException("Invalid string length " + length);
+        }
+
+        byte[] chunk = new byte[Math.min(length, READ_CHUNK)];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(chunk.length);
+        int remaining = length;
+        while (remaining > 0) {
+            int read = in.read(chunk, 0, Math.min(remaining, chunk.length));
+            if (read < 0) {
+                throw new EOFException("Expected " + remaining + " more bytes of a string of length " + length);
+            }
+            bytes.write(chunk, 0, read);
+            remaining -= read;
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_ENTRIES) {
+            throw new IOException("Invalid entry count " + count);
+        }
+        return count;
+    }
+
+    private static <T> T readEnum(DataInputStream in, T[] values) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IOException("Invalid enum value " + ordinal);
+        }
+        return values[ordinal];
+    }
+}
@@ -0,0 +1,168 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsLogs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived compiler daemon, listening on the loopback interface.
+ *
+ * Keeping the JVM alive means the ANTLR DFA caches of JavammParser and the JIT-compiled visitors are reused by every
+ * request. Each connection may send several requests, see {@link CompilerProtocol} for the format. Requests must carry
+ * the token the server writes to its token file at startup.
+ */
+public class CompilerServer {
+
+    private static final int DEFAULT_IDLE_TIMEOUT_MS = 30_000;
+
+    private final int port;
+    private final int idleTimeoutMs;
+    private final String warmUpDir;
+    private final Path tokenFile;
+    private final ExecutorService workers;
+    private volatile ServerSocket serverSocket;
+    private volatile String token;
+
+    public CompilerServer(Map<String, String> config) {
+        this.port = Integer.parseInt(config.getOrDefault("port", String.valueOf(CompilerProtocol.DEFAULT_PORT)));
+        this.idleTimeoutMs = Integer.parseInt(config.getOrDefault("idleTimeout",
+                String.valueOf(DEFAULT_IDLE_TIMEOUT_MS)));
+        this.warmUpDir = config.get("warmUp");
+        this.tokenFile = CompilerProtocol.getTokenFile(config, port);
+        this.workers = Executors.newFixedThreadPool(Integer.parseInt(config.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors()))));
+    }
+
+    public void run() throws IOException {
+        if (warmUpDir != null) {
+            long start = System.nanoTime();
+            int parsed = SimpleParser.warmUp(Paths.get(warmUpDir));
+            SpecsLogs.info("Warmed up the parser with " + parsed + " files in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        // Only written once the port is ours, so that a second server does not replace the token of the first
+        token = CompilerProtocol.newToken();
+        try {
+            CompilerProtocol.writeToken(tokenFile, token);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        SpecsLogs.info("Compiler server listening on " + serverSocket.getLocalSocketAddress() + ", token in "
+                + tokenFile);
+
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    // Server socket was closed by a shutdown request
+                    break;
+                }
+                workers.submit(() -> handle(socket));
+            }
+        } finally {
+            workers.shutdownNow();
+            Files.deleteIfExists(tokenFile);
+        }
+    }
+
+    /**
+     * @return the port the server listens on, which is only known once it is running if it was started on port 0
+     */
+    public int getLocalPort() {
+        ServerSocket socket = serverSocket;
+        return socket == null ? -1 : socket.getLocalPort();
+    }
+
+    public void shutdown() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not close server socket: " + e.getMessage());
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            // Each connection holds a worker, so one that stops sending is closed rather than kept forever
+            socket.setSoTimeout(idleTimeoutMs);
+            while (true) {
+                String requestToken;
+                try {
+                    requestToken = CompilerProtocol.readToken(in);
+                } catch (EOFException e) {
+                    // Client closed the connection
+                    return;
+                }
+                // Checked before reading the rest, so that clients without the token cannot make the server read
+                // and keep large requests
+                if (!CompilerProtocol.isValidToken(token, requestToken)) {
+                    CompilerProtocol.writeOutput(out, new CompilationOutput(null, null, null,
+                            List.of(Report.newError(Stage.OTHER, -1, -1, "Missing or wrong server token", null))));
+                    return;
+                }
+
+                String command = CompilerProtocol.readCommand(in);
+                Map<String, String> config = CompilerProtocol.readConfig(in);
+                String payload = CompilerProtocol.readString(in);
+
+                switch (command) {
+                    case CompilerProtocol.COMPILE_SOURCE -> CompilerProtocol.writeOutput(out, JmmCompiler.compile(payload, config));
+                    case CompilerProtocol.COMPILE_PATH -> CompilerProtocol.writeOutput(out, compilePath(payload, config));
+                    case CompilerProtocol.PING -> CompilerProtocol.writeString(out, "PONG");
+                    case CompilerProtocol.SHUTDOWN -> {
+                        CompilerProtocol.writeString(out, "BYE");
+                        out.flush();
+                        shutdown();
+                        return;
+                    }
+                    default -> CompilerProtocol.writeOutput(out, new CompilationOutput(null, null, null,
+                            List.of(Report.newError(Stage.OTHER, -1, -1, "Unknown command '" + command + "'", null))));
+                }
+                out.flush();
+            }
+        } catch (SocketTimeoutException e) {
+            SpecsLogs.info("Closing connection idle for more than " + idleTimeoutMs + " ms");
+        } catch (IOException e) {
+            SpecsLogs.warn("Error while serving compile request: " + e.getMessage());
+        }
+    }
+
+    private static CompilationOutput compilePath(String path, Map<String, String> config) {
+        File inputFile = new File(path);
+        if (!inputFile.isFile()) {
+            return new CompilationOutput(null, null, null, List.of(Report.newError(Stage.OTHER, -1, -1,
+                    "Expected a path to an existing input file, got '" + inputFile + "'.", null)));
+        }
+        config.put("inputFile", inputFile.getPath());
+        return JmmCompiler.compile(SpecsIo.read(inputFile), config);
+    }
+}
@@ -0,0 +1,556 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.specs.util.SpecsLogs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index of the classes that a program can import, read from the class files in the directory given by the option
+ * "libPath" (by default libs-jmm/compiled).
+ *
+ * Only the method signatures of each class are kept, indexed by the binary name of the class (e.g. "pkg.Foo", which
+ * the code imports with "import pkg.Foo;") and by method name. Parameter and return types keep only the simple name of
+ * their class, as jmm types do. The index is built once per library directory and JVM. When a compilation cache is
+ * enabled, it is also saved next to it, so that a new JVM only has to read the class files that changed since the last
+ * run. Each time the resolver is opened, the library directory is listed again and only the class files that were
+ * added, or whose size or modification time changed, are read.
+ */
+public class ImportResolver {
+
+    private static final int INDEX_VERSION = 2;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_PRIVATE = 0x0002;
+
+    // By library directory and index file, the same directory may be used with and without a cache
+    private static final Map<List<Path>, ImportResolver> RESOLVERS = new ConcurrentHashMap<>();
+
+    private final Path libPath;
+    // Null when the index is not saved
+    private final Path indexFile;
+
+    // Class files that were already read, by path relative to the library directory
+    private Map<String, IndexedFile> files = new HashMap<>();
+    // By binary name
+    private volatile Map<String, ImportedClass> classes = new HashMap<>();
+
+    private ImportResolver(Path libPath, Path indexFile) {
+        this.libPath = libPath;
+        this.indexFile = indexFile;
+        if (indexFile != null) {
+            load();
+        }
+    }
+
+    private ImportResolver(Path libPath, Map<String, ImportedClass> classes) {
+        this.libPath = libPath;
+        this.indexFile = null;
+        this.classes = classes;
+    }
+
+    /**
+     * @param indexDir the directory where the index is saved, or null to keep it only in memory
+     */
+    public static ImportResolver open(Path libPath, Path indexDir) {
+        Path dir = libPath.toAbsolutePath().normalize();
+        Path indexFile = indexDir == null ? null
+                : indexDir.toAbsolutePath().normalize().resolve("imports-" + shortHash(dir.toString()) + ".idx");
+        ImportResolver resolver = RESOLVERS.computeIfAbsent(Arrays.asList(dir, indexFile),
+                key -> new ImportResolver(dir, indexFile));
+        resolver.refresh();
+        return resolver;
+    }
+
+    /**
+     * Returns the resolver of the "libPath" option, saving its index in the directory of the compilation cache if the
+     * options "cache" or "cacheDir" enable it.
+     */
+    public static ImportResolver fromConfig(Map<String, String> config) {
+        Path libPath = Paths.get(config.getOrDefault("libPath", JasminAssembler.DEFAULT_LIB_PATH));
+        String cacheDir = config.get("cacheDir");
+        Path indexDir = null;
+        if (cacheDir != null) {
+            indexDir = Paths.get(cacheDir);
+        } else if (Boolean.parseBoolean(config.getOrDefault("cache", "false"))) {
+            indexDir = Paths.get(CompilationCache.DEFAULT_DIR);
+        }
+        return open(libPath, indexDir);
+    }
+
+    /**
+     * @return a resolver that also knows the given classes, e.g. those of other source files compiled together with
+     * this one, which take the place of library classes with the same binary name
+     */
+    public ImportResolver withClasses(Collection<ImportedClass> sourceClasses) {
+        Map<String, ImportedClass> merged = new HashMap<>(classes);
+        for (ImportedClass sourceClass : sourceClasses) {
+            merged.put(sourceClass.getName(), sourceClass);
+        }
+        return new ImportResolver(libPath, merged);
+    }
+
+    /**
+     * Describes the class of a symbol table as if it had been read from its class file.
+     */
+    public static ImportedClass describe(MySymbolTable table) {
+        List<ImportedMethod> methods = new ArrayList<>();
+        for (MethodDefinition method : table.getMethodDefinitions()) {
+            StringBuilder descriptor = new StringBuilder("(");
+            for (Type parameterType : method.getSignature().getParameterTypes()) {
+                descriptor.append(toDescriptor(parameterType));
+            }
+            descriptor.append(')').append(toDescriptor(method.getReturnType()));
+            // main is the only method that can be static in jmm
+            methods.add(new ImportedMethod(method.getMethodName(), descriptor.toString(),
+                    method.getMethodName().equals("main")));
+        }
+        String superName = table.getSuper() == null ? null : table.getImportedName(table.getSuper());
+        return new ImportedClass(table.getClassName(), superName, methods);
+    }
+
+    private static String toDescriptor(Type type) {
+        String descriptor = switch (type.getName()) {
+            case "int" -> "I";
+            case "boolean" -> "Z";
+            case "void" -> "V";
+            case "String" -> "Ljava/lang/String;";
+            default -> "L" + type.getName() + ";";
+        };
+        return type.isArray() ? "[" + descriptor : descriptor;
+    }
+
+    /**
+     * @param name the binary name of the class, e.g. "pkg.Foo"
+     */
+    public Optional<ImportedClass> getClass(String name) {
+        return Optional.ofNullable(classes.get(name));
+    }
+
+    /**
+     * Returns the return type of the method of the given class (or of one of its superclasses) that accepts the given
+     * arguments. Argument types that are not known, e.g. "#ASSUME", match any parameter.
+     *
+     * @param className the binary name of the class
+     * @return the type, or empty if the class is not indexed or no single method matches
+     */
+    public Optional<Type> getReturnType(String className, String methodName, List<Type> argTypes) {
+        Set<String> visited = new HashSet<>();
+        Optional<ImportedClass> current = getClass(className);
+        while (current.isPresent() && visited.add(current.get().getName())) {
+            List<ImportedMethod> candidates = current.get().getMethods(methodName).stream()
+                    .filter(method -> method.accepts(argTypes))
+                    .collect(Collectors.toList());
+            if (candidates.size() == 1) {
+                return Optional.of(candidates.get(0).getReturnType());
+            }
+            if (candidates.size() > 1) {
+                // Several overloads match, only answer if they all return the same type
+                Type returnType = candidates.get(0).getReturnType();
+                return candidates.stream().allMatch(method -> method.getReturnType().equals(returnType))
+                        ? Optional.of(returnType) : Optional.empty();
+            }
+            current = current.get().getSuperName().flatMap(this::getClass);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return true if the class "sub" is "sup" or extends it, as far as the index knows, both given by binary name
+     */
+    public boolean isSubclass(String sub, String sup) {
+        Set<String> visited = new HashSet<>();
+        String current = sub;
+        while (current != null && visited.add(current)) {
+            if (current.equals(sup)) {
+                return true;
+            }
+            current = getClass(current).flatMap(ImportedClass::getSuperName).orElse(null);
+        }
+        return false;
+    }
+
+    /**
+     * Reads the class files that were added or changed since the last call, and saves the index if anything changed.
+     * A file replaced in place does not change the modification time of its directory, so every file is checked.
+     */
+    private synchronized void refresh() {
+        if (!Files.isDirectory(libPath)) {
+            // No library directory, nothing to index
+            return;
+        }
+
+        List<Path> classFiles;
+        try (Stream<Path> paths = Files.walk(libPath)) {
+            classFiles = paths.filter(path -> path.toString().endsWith(".class") && Files.isRegularFile(path))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not list imported classes in " + libPath + ": " + e.getMessage());
+            return;
+        }
+
+        boolean changed = classFiles.size() != files.size();
+        Map<String, IndexedFile> newFiles = new HashMap<>();
+        for (Path classFile : classFiles) {
+            String relative = libPath.relativize(classFile).toString();
+            IndexedFile indexed = files.get(relative);
+            try {
+                long size = Files.size(classFile);
+                long modified = Files.getLastModifiedTime(classFile).toMillis();
+                if (indexed == null || indexed.size != size || indexed.modified != modified) {
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(classFile))) {
+                        indexed = new IndexedFile(size, modified, readClass(new DataInputStream(in)));
+                    }
+                    changed = true;
+                }
+                newFiles.put(relative, indexed);
+            } catch (IOException | RuntimeException e) {
+                SpecsLogs.warn("Could not read imported class " + classFile + ": " + e.getMessage());
+            }
+        }
+
+        if (!changed) {
+            return;
+        }
+
+        setFiles(newFiles);
+        if (indexFile != null) {
+            save();
+        }
+    }
+
+    private void setFiles(Map<String, IndexedFile> newFiles) {
+        Map<String, ImportedClass> newClasses = new HashMap<>();
+        for (IndexedFile indexed : newFiles.values()) {
+            newClasses.put(indexed.importedClass.getName(), indexed.importedClass);
+        }
+        files = newFiles;
+        classes = newClasses;
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(indexFile)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_VERSION) {
+                return;
+            }
+            int numFiles = in.readInt();
+            Map<String, IndexedFile> loaded = new HashMap<>();
+            for (int i = 0; i < numFiles; i++) {
+                String relative = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                String name = in.readUTF();
+                String superName = in.readBoolean() ? in.readUTF() : null;
+                int numMethods = in.readInt();
+                List<ImportedMethod> methods = new ArrayList<>();
+                for (int j = 0; j < numMethods; j++) {
+                    String methodName = in.readUTF();
+                    boolean isStatic = in.readBoolean();
+                    methods.add(new ImportedMethod(methodName, in.readUTF(), isStatic));
+                }
+                loaded.put(relative, new IndexedFile(size, modified, new ImportedClass(name, superName, methods)));
+            }
+            setFiles(loaded);
+        } catch (IOException | RuntimeException e) {
+            // A damaged index is rebuilt from the class files
+            SpecsLogs.warn("Ignoring import index " + indexFile + ": " + e.getMessage());
+            setFiles(new HashMap<>());
+        }
+    }
+
+    private void save() {
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path temp = Files.createTempFile(indexFile.getParent(), "imports", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(files.size());
+                for (Map.Entry<String, IndexedFile> entry : files.entrySet()) {
+                    IndexedFile indexed = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(indexed.size);
+                    out.writeLong(indexed.modified);
+                    out.writeUTF(indexed.importedClass.getName());
+                    out.writeBoolean(indexed.importedClass.superName != null);
+                    if (indexed.importedClass.superName != null) {
+                        out.writeUTF(indexed.importedClass.superName);
+                    }
+                    List<ImportedMethod> methods = indexed.importedClass.getAllMethods();
+                    out.writeInt(methods.size());
+                    for (ImportedMethod method : methods) {
+                        out.writeUTF(method.getName());
+                        out.writeBoolean(method.isStatic());
+                        out.writeUTF(method.descriptor);
+                    }
+                }
+            }
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // The index is only an optimization, it is built again next time
+            SpecsLogs.warn("Could not save import index " + indexFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the name, superclass and non-private methods of a class file. The names of the class and of its superclass
+     * are binary names.
+     */
+    static ImportedClass readClass(DataInputStream in) throws IOException {
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        int poolSize = in.readUnsignedShort();
+        String[] utf8 = new String[poolSize];
+        int[] classNames = new int[poolSize];
+        for (int i = 1; i < poolSize; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1 -> utf8[i] = in.readUTF();
+                case 7 -> classNames[i] = in.readUnsignedShort();
+                case 8, 16, 19, 20 -> in.skipBytes(2);
+                case 15 -> in.skipBytes(3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipBytes(4);
+                case 5, 6 -> {
+                    // Longs and doubles take two entries of the pool
+                    in.skipBytes(8);
+                    i++;
+                }
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        in.readUnsignedShort();
+        String name = binaryName(utf8[classNames[in.readUnsignedShort()]]);
+        int superIndex = in.readUnsignedShort();
+        String superName = superIndex == 0 ? null : binaryName(utf8[classNames[superIndex]]);
+        if ("java.lang.Object".equals(superName)) {
+            superName = null;
+        }
+
+        in.skipBytes(2 * in.readUnsignedShort());
+        skipMembers(in);
+
+        List<ImportedMethod> methods = new ArrayList<>();
+        int numMethods = in.readUnsignedShort();
+        for (int i = 0; i < numMethods; i++) {
+            int access = in.readUnsignedShort();
+            String methodName = utf8[in.readUnsignedShort()];
+            String descriptor = utf8[in.readUnsignedShort()];
+            skipAttributes(in);
+            if ((access & ACC_PRIVATE) == 0 && !methodName.startsWith("<")) {
+                methods.add(new ImportedMethod(methodName, descriptor, (access & ACC_STATIC) != 0));
+            }
+        }
+
+        return new ImportedClass(name, superName, methods);
+    }
+
+    private static void skipMembers(DataInputStream in) throws IOException {
+        int numMembers = in.readUnsignedShort();
+        for (int i = 0; i < numMembers; i++) {
+            in.skipBytes(6);
+            skipAttributes(in);
+        }
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int numAttributes = in.readUnsignedShort();
+        for (int i = 0; i < numAttributes; i++) {
+            in.skipBytes(2);
+            in.skipBytes(in.readInt());
+        }
+    }
+
+    private static String binaryName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    private static String simpleName(String name) {
+        int separator = Math.max(name.lastIndexOf('/'), name.lastIndexOf('.'));
+        return name.substring(separator + 1);
+    }
+
+    private static String shortHash(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class IndexedFile {
+        private final long size;
+        private final long modified;
+        private final ImportedClass importedClass;
+
+        private IndexedFile(long size, long modified, ImportedClass importedClass) {
+            this.size = size;
+            this.modified = modified;
+            this.importedClass = importedClass;
+        }
+    }
+
+    public static class ImportedClass {
+        private final String name;
+        private final String superName;
+        private final Map<String, List<ImportedMethod>> methods = new HashMap<>();
+
+        public ImportedClass(String name, String superName, List<ImportedMethod> methods) {
+            this.name = name;
+            this.superName = superName;
+            for (ImportedMethod method : methods) {
+                this.methods.computeIfAbsent(method.getName(), key -> new ArrayList<>()).add(method);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Optional<String> getSuperName() {
+            return Optional.ofNullable(superName);
+        }
+
+        public List<ImportedMethod> getMethods(String methodName) {
+            return methods.getOrDefault(methodName, Collections.emptyList());
+        }
+
+        public List<ImportedMethod> getAllMethods() {
+            return methods.values().stream().flatMap(List::stream).collect(Collectors.toList());
+        }
+    }
+
+    public static class ImportedMethod {
+        private static final Set<String> PRIMITIVE_TYPES = Set.of("int", "boolean", "long", "double", "float", "char",
+                "byte", "short");
+
+        private final String name;
+        private final String descriptor;
+        private final boolean isStatic;
+        private final List<Type> parameters = new ArrayList<>();
+        private final Type returnType;
+
+        public ImportedMethod(String name, String descriptor, boolean isStatic) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.isStatic = isStatic;
+
+            int[] position = {descriptor.indexOf('(') + 1};
+            while (descriptor.charAt(position[0]) != ')') {
+                parameters.add(parseType(descriptor, position));
+            }
+            position[0]++;
+            this.returnType = parseType(descriptor, position);
+        }
+
+        private static Type parseType(String descriptor, int[] position) {
+            boolean isArray = false;
+            while (descriptor.charAt(position[0]) == '[') {
+                isArray = true;
+                position[0]++;
+            }
+
+            char kind = descriptor.charAt(position[0]++);
+            String typeName = switch (kind) {
+                case 'I' -> "int";
+                case 'Z' -> "boolean";
+                case 'V' -> "void";
+                case 'J' -> "long";
+                case 'D' -> "double";
+                case 'F' -> "float";
+                case 'C' -> "char";
+                case 'B' -> "byte";
+                case 'S' -> "short";
+                case 'L' -> {
+                    int end = descriptor.indexOf(';', position[0]);
+                    String className = simpleName(descriptor.substring(position[0], end));
+                    position[0] = end + 1;
+                    yield className;
+                }
+                default -> throw new IllegalArgumentException("Invalid descriptor " + descriptor);
+            };
+            return new Type(typeName, isArray);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isStatic() {
+            return isStatic;
+        }
+
+        public List<Type> getParameters() {
+            return parameters;
+        }
+
+        public Type getReturnType() {
+            return returnType;
+        }
+
+        private boolean accepts(List<Type> argTypes) {
+            if (argTypes.size() != parameters.size()) {
+                return false;
+            }
+            for (int i = 0; i < argTypes.size(); i++) {
+                Type arg = argTypes.get(i);
+                if (arg.getName().startsWith("#")) {
+                    continue;
+                }
+                Type param = parameters.get(i);
+                if (param.isArray() != arg.isArray()) {
+                    return false;
+                }
+                if (!param.getName().equals(arg.getName()) && isPrimitive(param.getName())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isPrimitive(String typeName) {
+            return PRIMITIVE_TYPES.contains(typeName);
+        }
+    }
+}
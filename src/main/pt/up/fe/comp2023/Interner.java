@@ -0,0 +1,168 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives the identifiers and types of a compilation dense int IDs, and a single Type instance per type, so that they
+ * can be compared by reference or by ID. Each symbol table has its own, frozen when the table is built.
+ *
+ * Names have IDs from 0, and the ID of a type is twice the ID of its name, plus one for arrays. The built-in types have
+ * the same IDs and instances in every interner, the constants below.
+ */
+public class Interner {
+
+    public static final Type INT = new Type("int", false);
+    public static final Type INT_ARRAY = new Type("int", true);
+    public static final Type BOOLEAN = new Type("boolean", false);
+    public static final Type BOOLEAN_ARRAY = new Type("boolean", true);
+    public static final Type VOID = new Type("void", false);
+    public static final Type STRING = new Type("String", false);
+    public static final Type STRING_ARRAY = new Type("String", true);
+    public static final Type CHAR = new Type("char", false);
+    public static final Type DOUBLE = new Type("double", false);
+    public static final Type FLOAT = new Type("float", false);
+    public static final Type BYTE = new Type("byte", false);
+    public static final Type SHORT = new Type("short", false);
+    public static final Type LONG = new Type("long", false);
+
+    // Every built-in type and its array type, at the index of their ID
+    private static final List<Type> BUILT_IN = List.of(INT, INT_ARRAY, BOOLEAN, BOOLEAN_ARRAY, VOID,
+            new Type("void", true), STRING, STRING_ARRAY, CHAR, new Type("char", true), DOUBLE,
+            new Type("double", true), FLOAT, new Type("float", true), BYTE, new Type("byte", true), SHORT,
+            new Type("short", true), LONG, new Type("long", true));
+
+    private static final Map<String, Integer> BUILT_IN_IDS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < BUILT_IN.size(); i += 2) {
+            BUILT_IN_IDS.put(BUILT_IN.get(i).getName(), i / 2);
+        }
+    }
+
+    private final Map<String, Integer> ids;
+    private final List<String> names;
+    private final List<Type> types;
+    private final boolean frozen;
+
+    public Interner() {
+        this.ids = new HashMap<>(BUILT_IN_IDS);
+        this.names = new ArrayList<>();
+        this.types = new ArrayList<>(BUILT_IN);
+        this.frozen = false;
+        for (int i = 0; i < BUILT_IN.size(); i += 2) {
+            names.add(BUILT_IN.get(i).getName());
+        }
+    }
+
+    private Interner(Interner other, boolean frozen) {
+        this.frozen = frozen;
+        if (frozen) {
+            this.ids = Collections.unmodifiableMap(new HashMap<>(other.ids));
+            this.names = Collections.unmodifiableList(new ArrayList<>(other.names));
+            this.types = Collections.unmodifiableList(new ArrayList<>(other.types));
+        } else {
+            this.ids = new HashMap<>(other.ids);
+            this.names = new ArrayList<>(other.names);
+            this.types = new ArrayList<>(other.types);
+        }
+    }
+
+    /**
+     * @return an interner with the same IDs and instances that can no longer be changed, and so can be shared between
+     * threads. Names that it does not know have the ID -1, and their types are not interned.
+     */
+    public Interner freeze() {
+        return frozen ? this : new Interner(this, true);
+    }
+
+    /**
+     * @return an interner with the same IDs and instances, that new names can be added to
+     */
+    public Interner copy() {
+        return new Interner(this, false);
+    }
+
+    /**
+     * @return the shared instance of a built-in type, or null if the name is not one
+     */
+    public static Type getBuiltInType(String name, boolean isArray) {
+        Integer id = BUILT_IN_IDS.get(name);
+        return id == null ? null : BUILT_IN.get(id * 2 + (isArray ? 1 : 0));
+    }
+
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (frozen) {
+            return -1;
+        }
+
+        id = names.size();
+        ids.put(name, id);
+        names.add(name);
+        types.add(new Type(name, false));
+        types.add(new Type(name, true));
+        return id;
+    }
+
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * @return the number of names, built-in ones included
+     */
+    public int size() {
+        return names.size();
+    }
+
+    public String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        int id = getId(name);
+        return id == -1 ? name : names.get(id);
+    }
+
+    public int getTypeId(Type type) {
+        int id = getId(type.getName());
+        return id == -1 ? -1 : id * 2 + (type.isArray() ? 1 : 0);
+    }
+
+    public Type getType(int typeId) {
+        return types.get(typeId);
+    }
+
+    public Type getType(String name, boolean isArray) {
+        int id = getId(name);
+        return id == -1 ? new Type(name, isArray) : types.get(id * 2 + (isArray ? 1 : 0));
+    }
+
+    public Type intern(Type type) {
+        if (type == null || type.getName() == null) {
+            return type;
+        }
+        return getType(type.getName(), type.isArray());
+    }
+
+    public Symbol intern(Symbol symbol) {
+        return new Symbol(intern(symbol.getType()), intern(symbol.getName()));
+    }
+
+    public List<Symbol> intern(List<Symbol> symbols) {
+        List<Symbol> interned = new ArrayList<>(symbols.size());
+        for (Symbol symbol : symbols) {
+            interned.add(intern(symbol));
+        }
+        return interned;
+    }
+}
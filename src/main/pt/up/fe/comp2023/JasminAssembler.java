@@ -0,0 +1,143 @@
+package pt.up.fe.comp2023;
+
+import jasmin.ClassFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Assembles Jasmin code to class files in memory, and packages or runs them without starting another JVM.
+ *
+ * Classes are run in their own class loader, which only sees the platform classes and the classes in the
+ * directory given by "libPath" (by default libs-jmm/compiled), never the classes of the compiler itself.
+ */
+public class JasminAssembler {
+
+    public static final String DEFAULT_LIB_PATH = "libs-jmm/compiled";
+
+    /**
+     * @return the bytes of the class file described by the given Jasmin code
+     */
+    public static byte[] assemble(String jasminCode, String className) {
+        try {
+            ClassFile classFile = new ClassFile();
+            classFile.readJasmin(new StringReader(jasminCode), className + ".j", true);
+            if (classFile.errorCount() > 0) {
+                throw new RuntimeException("Found " + classFile.errorCount() + " errors while assembling " + className);
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 * 1024);
+            classFile.write(bytes);
+            return bytes.toByteArray();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not assemble " + className + ": " + e.getMessage(), e);
+        }
+    }
+
+    public static Path writeClass(Path outputDir, String className, byte[] classBytes) {
+        try {
+            Files.createDirectories(outputDir);
+            return Files.write(outputDir.resolve(className + ".class"), classBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write class " + className, e);
+        }
+    }
+
+    /**
+     * Packages the given classes in a jar. If a main class is given, it is set in the manifest.
+     */
+    public static void writeJar(Path jarFile, Map<String, byte[]> classes, String mainClass) {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (mainClass != null) {
+            manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+        }
+
+        try {
+            if (jarFile.getParent() != null) {
+                Files.createDirectories(jarFile.getParent());
+            }
+            try (OutputStream out = Files.newOutputStream(jarFile);
+                 JarOutputStream jar = new JarOutputStream(out, manifest)) {
+                for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                    jar.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class"));
+                    jar.write(entry.getValue());
+                    jar.closeEntry();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write jar " + jarFile, e);
+        }
+    }
+
+    /**
+     * Loads the given classes in a new class loader and calls the main method of the main class.
+     *
+     * Anything the program prints goes to the standard output of this JVM.
+     */
+    public static void run(Map<String, byte[]> classes, String mainClass, String[] args, Map<String, String> config) {
+        try (InMemoryClassLoader loader = new InMemoryClassLoader(classes, getLibraryUrls(config))) {
+            Method main = loader.loadClass(mainClass).getMethod("main", String[].class);
+            if (!Modifier.isStatic(main.getModifiers())) {
+                throw new RuntimeException("Method main of " + mainClass + " is not static");
+            }
+            main.invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException("Exception while running " + mainClass + ": " + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Could not run " + mainClass + ": " + e, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            System.out.flush();
+        }
+    }
+
+    private static URL[] getLibraryUrls(Map<String, String> config) {
+        Path libPath = Paths.get(config.getOrDefault("libPath", DEFAULT_LIB_PATH));
+        try {
+            return new URL[]{libPath.toUri().toURL()};
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("Invalid library path '" + libPath + "'", e);
+        }
+    }
+
+    // The library classes are loaded by the same loader as the generated ones, since jmm programs call
+    // package-private methods of classes in the default package (e.g. io.read), which only works within one loader
+    private static class InMemoryClassLoader extends URLClassLoader {
+        private final Map<String, byte[]> classes;
+
+        private InMemoryClassLoader(Map<String, byte[]> classes, URL[] libraryUrls) {
+            super(libraryUrls, ClassLoader.getPlatformClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                return super.findClass(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
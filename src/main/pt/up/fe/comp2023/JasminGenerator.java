@@ -6,11 +6,8 @@ import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.specs.util.SpecsLogs;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.sql.ResultSet;
-import java.time.format.DecimalStyle;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -24,28 +21,18 @@ public class JasminGenerator implements JasminBackend {
     int localsCounter;
 
     @Override
-        public JasminResult toJasmin(OllirResult ollirResult) {
+    public JasminResult toJasmin(OllirResult ollirResult) {
+        return StageMetrics.measure("jasmin", () -> generateJasmin(ollirResult));
+    }
+
+    private JasminResult generateJasmin(OllirResult ollirResult) {
         ClassUnit ollirClass = ollirResult.getOllirClass();
         String jasminCode = generateClass(ollirClass);
 
-        try {
-            String path = "C:/universidade/compiladores";
-            File file = new File(path, "resultado" + ".j");
-            if (file.createNewFile()) {
-                System.out.println("File created: " + file.getName());
-            }
-            FileWriter fileWriter = new FileWriter(file);
-            fileWriter.write(jasminCode.toString());
-            fileWriter.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
         try {
             ollirClass.checkMethodLabels();
             ollirClass.buildCFGs();
             ollirClass.buildVarTables();
-            System.out.println("\n\n---------\n" + jasminCode + "\n---------\n\n");
 
             // More reports from this stage
             List<Report> reports = new ArrayList<>();
@@ -315,7 +302,7 @@ public class JasminGenerator implements JasminBackend {
                 for (Element e : instruction.getListOfOperands())
                     jasminCall.append(getTypeDescriptor(e.getType()));
 
-                jasminCall.append(")").append(getTypeDescriptor(instruction.getReturnType()));
+                jasminCall.append(")").append(getTypeDescriptor(instruction.getReturnType())).append("\n");
                 return jasminCall.toString();
 
             case NEW:
@@ -458,7 +445,7 @@ public class JasminGenerator implements JasminBackend {
             case NEQ:
                 return "if_icmpne";
             default:
-                System.out.println(operation.getOpType());
+                SpecsLogs.debug("Unknown comparison: " + operation.getOpType());
                 return "; ERROR: Couldn't find the type of comparison";
         }
     }
@@ -474,7 +461,7 @@ public class JasminGenerator implements JasminBackend {
             case DIV:
                 return "idiv";
             default:
-                System.out.println(operation.getOpType());
+                SpecsLogs.debug("Unknown operation: " + operation.getOpType());
                 return "; ERROR: Couldn't find the type of operation";
         }
     }
@@ -498,8 +485,8 @@ public class JasminGenerator implements JasminBackend {
                 return loadDescriptor(descriptor) + loadElement(index, varTable) + "iaload\n";
             }
         }catch (NullPointerException | ClassCastException exception){
-            System.out.println(((Operand) element).getName());
-            System.out.println(descriptor.getVirtualReg() + " " + descriptor.getVarType());
+            SpecsLogs.debug("Could not load array element " + ((Operand) element).getName() + " ("
+                    + descriptor.getVirtualReg() + " " + descriptor.getVarType() + ")");
         }
 
         return loadDescriptor(descriptor);
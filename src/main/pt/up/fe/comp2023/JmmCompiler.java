@@ -0,0 +1,48 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Compiles a single source to its textual outputs, through the compilation cache when one is enabled.
+ */
+public class JmmCompiler {
+
+    /**
+     * Compiles the given code, going through the compilation cache when the config enables one.
+     */
+    public static CompilationOutput compile(String code, Map<String, String> config) {
+        Optional<CompilationCache> cache = CompilationCache.fromConfig(config);
+        if (cache.isEmpty()) {
+            return compileUncached(code, config);
+        }
+
+        String key = cache.get().key(code, config);
+        Optional<CompilationOutput> cached = cache.get().get(key);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        CompilationOutput output = compileUncached(code, config);
+        cache.get().put(key, output);
+        return output;
+    }
+
+    /**
+     * Compiles the given file. Without a cache, the file is parsed from a memory mapping and never read into a String.
+     */
+    public static CompilationOutput compile(Path sourceFile, Map<String, String> config) {
+        if (CompilationCache.fromConfig(config).isPresent()) {
+            // Cache keys are computed from the code
+            return compile(SpecsIo.read(sourceFile.toFile()), config);
+        }
+        return new CompilationPipeline().compile(sourceFile, config, CompilationPipeline.Step.JASMIN).toOutput();
+    }
+
+    private static CompilationOutput compileUncached(String code, Map<String, String> config) {
+        return new CompilationPipeline().compile(code, config).toOutput();
+    }
+}
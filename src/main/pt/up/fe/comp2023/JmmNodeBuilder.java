@@ -0,0 +1,169 @@
+package pt.up.fe.comp2023;
+
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parse listener that builds the AST, made of {@link CompactJmmNode}s, while the parser runs, instead of converting
+ * the finished parse tree afterwards.
+ *
+ * Each rule context is turned into a node when the parser exits it, taking the nodes of its children, and its own
+ * children are dropped right away, so the parse tree never exists in full next to the AST. Nodes get the same kind,
+ * hierarchy, position and label attributes as with AntlrParser.parse, with two differences: lists of rule labels (e.g.
+ * nameType in Parameter) hold the JmmNodes of those rules instead of the ANTLR contexts, and if statements with an else
+ * get the kind IfElseStatement, which the grammar no longer has an alternative for.
+ */
+public class JmmNodeBuilder implements ParseTreeListener {
+
+    // Kind, hierarchy and label fields only depend on the context class
+    private static final ClassValue<ContextInfo> CONTEXT_INFO = new ClassValue<>() {
+        @Override
+        protected ContextInfo computeValue(Class<?> contextClass) {
+            return new ContextInfo(contextClass);
+        }
+    };
+
+    private final Parser parser;
+
+    // Nodes of contexts that have been exited but not yet taken by their parent
+    private final Map<ParserRuleContext, JmmNode> nodes = new IdentityHashMap<>();
+
+    public JmmNodeBuilder(Parser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * @return the node built for the given context, usually the one returned by the start rule
+     */
+    public JmmNode getNode(ParserRuleContext context) {
+        return nodes.get(context);
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext context) {
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext context) {
+        ContextInfo info = CONTEXT_INFO.get(context.getClass());
+        CompactJmmNode node = isIfElse(context) ? new CompactJmmNode(NodeKind.IF_ELSE_STATEMENT)
+                : new CompactJmmNode(info.kind, info.hierarchy);
+
+        // Left-recursive contexts are exited before their stop token is set, which is then the last token consumed
+        Token start = context.getStart();
+        Token stop = context.getStop() != null ? context.getStop() : parser.getInputStream().LT(-1);
+        if (stop == null || start == null || stop.getTokenIndex() < start.getTokenIndex()) {
+            stop = start;
+        }
+        if (start != null) {
+            node.setPosition(start.getLine(), start.getCharPositionInLine(), stop.getLine(),
+                    stop.getCharPositionInLine());
+        }
+
+        for (Field field : info.fields) {
+            Object value;
+            try {
+                value = field.get(context);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Could not access field '" + field.getName() + "' from node " + context);
+            }
+
+            if (value == null && Token.class.isAssignableFrom(field.getType())) {
+                continue;
+            }
+            node.putObject(field.getName(), toAttribute(value));
+        }
+
+        // Terminals are not part of the AST
+        if (context.children != null) {
+            for (Object child : context.children) {
+                if (child instanceof ParserRuleContext) {
+                    JmmNode childNode = nodes.remove(child);
+                    if (childNode != null) {
+                        node.add(childNode);
+                    }
+                }
+            }
+            context.children = null;
+        }
+
+        nodes.put(context, node);
+    }
+
+    // The grammar parses if statements with and without else in the same alternative
+    private static boolean isIfElse(ParserRuleContext context) {
+        return context instanceof JavammParser.IfStatementContext
+                && ((JavammParser.IfStatementContext) context).statement().size() == 2;
+    }
+
+    private Object toAttribute(Object value) {
+        if (value instanceof Token) {
+            return ((Token) value).getText();
+        }
+        if (value instanceof ParserRuleContext) {
+            // Labels always point to children of the context being exited, which are still in the map
+            return nodes.get(value);
+        }
+        if (value instanceof List) {
+            List<Object> values = new ArrayList<>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                values.add(toAttribute(element));
+            }
+            return values;
+        }
+        return value;
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+    }
+
+    private static class ContextInfo {
+        private final String kind;
+        private final List<String> hierarchy;
+        private final List<Field> fields;
+
+        private ContextInfo(Class<?> contextClass) {
+            List<String> hierarchy = new ArrayList<>();
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> current = contextClass; !current.equals(ParserRuleContext.class);
+                 current = current.getSuperclass()) {
+                hierarchy.add(getKind(current));
+                for (Field field : current.getDeclaredFields()) {
+                    if (Modifier.isPublic(field.getModifiers()) && !Modifier.isStatic(field.getModifiers())) {
+                        fields.add(field);
+                    }
+                }
+            }
+
+            this.kind = hierarchy.get(0);
+            this.hierarchy = Collections.unmodifiableList(hierarchy);
+            this.fields = fields;
+        }
+
+        private static String getKind(Class<?> contextClass) {
+            String className = contextClass.getSimpleName();
+            if (!className.endsWith("Context")) {
+                throw new RuntimeException("Expected classname to end with 'Context' " + className);
+            }
+            return className.substring(0, className.length() - "Context".length());
+        }
+    }
+}
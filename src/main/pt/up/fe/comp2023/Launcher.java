@@ -1,13 +1,13 @@
 package pt.up.fe.comp2023;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import pt.up.fe.comp.TestUtils;
-import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
-import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
-import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsLogs;
 import pt.up.fe.specs.util.SpecsSystem;
 
@@ -20,6 +20,27 @@ public class Launcher {
         // Parse arguments as a map with predefined options
         var config = parseArgs(args);
 
+        if (config.containsKey("batch")) {
+            runBatch(config);
+            return;
+        }
+
+        if (config.containsKey("watch")) {
+            runWatch(config);
+            return;
+        }
+
+        if (config.containsKey("server")) {
+            runServer(config);
+            return;
+        }
+
+        if (config.containsKey("stop-server")) {
+            boolean stopped = new CompilerClient(config).shutdownServer();
+            System.out.println(stopped ? "Compiler server stopped" : "No compiler server running");
+            return;
+        }
+
         // Get input file
         File inputFile = new File(config.get("inputFile"));
 
@@ -28,48 +49,193 @@ public class Launcher {
             throw new RuntimeException("Expected a path to an existing input file, got '" + inputFile + "'.");
         }
 
-        // Read contents of input file
-        String code = SpecsIo.read(inputFile);
+        if (config.containsKey("client")) {
+            runClient(inputFile, config);
+            return;
+        }
+
+        boolean assemble = config.containsKey("classDir") || config.containsKey("jar") || config.containsKey("run");
+        if (CompilationCache.fromConfig(config).isPresent()) {
+            runCached(inputFile, config, assemble);
+            return;
+        }
+
+        if (StageMetrics.isEnabled(config)) {
+            StageMetrics.begin(inputFile.getPath());
+        }
+
+        // Run every stage once, stopping at the first one with errors
+        CompilationContext context = new CompilationPipeline().compile(inputFile.toPath(), config,
+                assemble ? CompilationPipeline.Step.ASSEMBLY : CompilationPipeline.Step.JASMIN);
+
+        if (!OutputWriter.isQuiet(config)) {
+            if (context.getParserResult() != null && context.getParserResult().getRootNode() != null) {
+                System.out.println(context.getParserResult().getRootNode().toTree());
+            }
+            if (context.getSemanticsResult() != null) {
+                System.out.println(context.getSemanticsResult().getSymbolTable().print());
+            }
+            if (context.getOllirResult() != null) {
+                System.out.println(context.getOllirResult().getOllirCode());
+            }
+        }
+
+        // Write the generated code to the output directory, if one was given
+        OutputWriter.fromConfig(config).ifPresent(writer -> writer.write(context.toOutput()));
 
-        // Instantiate JmmParser
-        SimpleParser parser = new SimpleParser();
+        if (StageMetrics.isEnabled(config)) {
+            StageMetrics.write(List.of(StageMetrics.end()), config);
+        }
+        if (ParserProfile.isEnabled(config)) {
+            System.out.print(ParserProfile.print());
+        }
 
-        // Parse stage
-        JmmParserResult parserResult = parser.parse(code, config);
+        // Check if there were errors in any stage
+        TestUtils.noErrors(context.getReports());
 
-        System.out.println(parserResult.getRootNode().toTree());
+        if (assemble) {
+            writeClasses(context.getJasminResult().getClassName(), context.getClassBytes(), config);
+        }
+    }
 
-        // Check if there are parsing errors
+    /**
+     * Compiles through the compilation cache. A cached entry only has the textual outputs, so the AST and the symbol
+     * table are not printed, and the class is assembled from the Jasmin code.
+     */
+    private static void runCached(File inputFile, Map<String, String> config, boolean assemble) {
+        CompilationOutput output = JmmCompiler.compile(inputFile.toPath(), config);
 
-        TestUtils.noErrors(parserResult.getReports());
+        if (output.getOllirCode() != null && !OutputWriter.isQuiet(config)) {
+            System.out.println(output.getOllirCode());
+        }
+        OutputWriter.fromConfig(config).ifPresent(writer -> writer.write(output));
+        CompilationCache.fromConfig(config).ifPresent(cache -> SpecsLogs.info(cache.printStats()));
 
-        MySymbolTable symbolTable = new MySymbolTable();
-        MyVisitor gen = new MyVisitor(symbolTable,"Calculator");
-        String generatedCode = gen.visit(parserResult.getRootNode(),"");
-        System.out.println(generatedCode);
-        MyAnalyser analyser =  new MyAnalyser();
-        JmmSemanticsResult analysisResult = analyser.semanticAnalysis(parserResult);
-        System.out.println(analysisResult.getSymbolTable().print());
-        System.out.println(analysisResult.getRootNode().toTree());
-        TestUtils.noErrors(analyser.semanticAnalysis(parserResult).getReports());
+        TestUtils.noErrors(output.getReports());
 
+        if (assemble) {
+            String className = output.getClassName();
+            writeClasses(className, JasminAssembler.assemble(output.getJasminCode(), className), config);
+        }
     }
 
-    private static Map<String, String> parseArgs(String[] args) {
-        SpecsLogs.info("Executing with args: " + Arrays.toString(args));
+    private static void writeClasses(String className, byte[] classBytes, Map<String, String> config) {
+        Map<String, byte[]> classes = Map.of(className, classBytes);
+
+        if (config.containsKey("classDir")) {
+            JasminAssembler.writeClass(Paths.get(config.get("classDir")), className, classBytes);
+        }
+        if (config.containsKey("jar")) {
+            JasminAssembler.writeJar(Paths.get(config.get("jar")), classes, className);
+        }
+        if (config.containsKey("run")) {
+            String runArgs = config.getOrDefault("runArgs", "").trim();
+            JasminAssembler.run(classes, className, runArgs.isEmpty() ? new String[0] : runArgs.split("\\s+"), config);
+        }
+    }
+
+    private static void runBatch(Map<String, String> config) {
+        List<File> inputFiles = BatchCompiler.collectInputs(config.get("batch"));
+        if (inputFiles.isEmpty()) {
+            throw new RuntimeException("No .jmm files found for '" + config.get("batch") + "'.");
+        }
+
+        long start = System.nanoTime();
+        List<BatchCompiler.FileSummary> summaries = new BatchCompiler(config).compile(inputFiles);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        for (BatchCompiler.FileSummary summary : summaries) {
+            System.out.print(summary.print());
+        }
+
+        long failed = summaries.stream().filter(BatchCompiler.FileSummary::hasErrors).count();
+        System.out.println("Compiled " + summaries.size() + " files in " + elapsedMs + " ms, " + failed + " failed");
+        System.out.println("Parser: " + SimpleParser.getSllParses() + " SLL parses, "
+                + SimpleParser.getLlFallbacks() + " LL fallbacks");
+        CompilationCache.fromConfig(config).ifPresent(cache -> System.out.println(cache.printStats()));
+        if (ParserProfile.isEnabled(config)) {
+            System.out.print(ParserProfile.print());
+        }
+
+        if (StageMetrics.isEnabled(config)) {
+            StageMetrics.write(summaries.stream()
+                    .map(BatchCompiler.FileSummary::getMetrics)
+                    .collect(Collectors.toList()), config);
+        }
+    }
+
+    private static void runWatch(Map<String, String> config) {
+        try (WatchCompiler watcher = new WatchCompiler(Paths.get(config.get("watch")), config)) {
+            watcher.run();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not watch '" + config.get("watch") + "': " + e.getMessage(), e);
+        }
+    }
+
+    private static void runServer(Map<String, String> config) {
+        try {
+            new CompilerServer(config).run();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not start compiler server: " + e.getMessage(), e);
+        }
+    }
 
-        // Check if there is at least one argument
-        if (args.length != 1) {
-            throw new RuntimeException("Expected a single argument, a path to an existing input file.");
+    private static void runClient(File inputFile, Map<String, String> config) {
+        CompilationOutput output = new CompilerClient(config).compile(inputFile, config);
+
+        for (Report report : output.getReports()) {
+            System.out.println(report);
+        }
+        if (output.getJasminCode() != null && !OutputWriter.isQuiet(config)) {
+            System.out.println(output.getJasminCode());
         }
 
+        OutputWriter.fromConfig(config).ifPresent(writer -> writer.write(output));
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        SpecsLogs.info("Executing with args: " + Arrays.toString(args));
+
         // Create config
         Map<String, String> config = new HashMap<>();
-        config.put("inputFile", args[0]);
         config.put("optimize", "false");
         config.put("registerAllocation", "-1");
         config.put("debug", "false");
 
+        // Options have the form --name or --name=value, everything else is a positional argument
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            if (equals == -1) {
+                config.put(arg.substring(2), "true");
+            } else {
+                config.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+
+        // The server is only controlled through options
+        if (config.containsKey("server") || config.containsKey("stop-server")) {
+            return config;
+        }
+
+        // Check if there is exactly one input, a file, or with --batch, a directory, glob or @list file
+        if (positional.size() != 1) {
+            throw new RuntimeException("Expected a single argument, a path to an existing input file"
+                    + " (or with --batch, a directory, a glob or an @list file, or with --watch, a directory).");
+        }
+
+        if (config.containsKey("batch")) {
+            config.put("batch", positional.get(0));
+        } else if (config.containsKey("watch")) {
+            config.put("watch", positional.get(0));
+        } else {
+            config.put("inputFile", positional.get(0));
+        }
+
         return config;
     }
 
@@ -0,0 +1,162 @@
+package pt.up.fe.comp2023;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A CharStream over the bytes of a source file, so that the lexer reads the file contents without first copying
+ * them into a String and then into a char array.
+ *
+ * Files up to {@link #MAX_READ_BYTES} are read into a heap buffer, larger ones are memory-mapped. A mapping is only
+ * released when the buffer is garbage collected, and until then Windows does not let the file be overwritten or
+ * deleted, which the watch mode and the compiler server would otherwise run into with the files they compile again.
+ *
+ * Pure ASCII files, the usual case, are scanned straight from the bytes. Files with other UTF-8 characters are decoded
+ * once into a char buffer, since characters can no longer be found by their byte offset.
+ */
+public class MappedCharStream implements CharStream {
+
+    static final int MAX_READ_BYTES = 16 * 1024 * 1024;
+
+    private final String sourceName;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private final int size;
+    private int position = 0;
+
+    private MappedCharStream(String sourceName, ByteBuffer bytes, CharBuffer chars) {
+        this.sourceName = sourceName;
+        this.bytes = bytes;
+        this.chars = chars;
+        this.size = bytes != null ? bytes.limit() : chars.limit();
+    }
+
+    public static MappedCharStream open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new RuntimeException("Input file " + file + " is too large");
+            }
+
+            ByteBuffer contents = channel.size() <= MAX_READ_BYTES ? read(channel)
+                    // The mapping stays valid after the channel is closed
+                    : channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (isAscii(contents)) {
+                return new MappedCharStream(file.toString(), contents, null);
+            }
+            return new MappedCharStream(file.toString(), null, StandardCharsets.UTF_8.decode(contents));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read input file " + file, e);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // Read until the buffer is full, or until the end of a file that got shorter
+        }
+        return buffer.flip();
+    }
+
+    private static boolean isAscii(ByteBuffer buffer) {
+        for (int i = 0; i < buffer.limit(); i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int charAt(int index) {
+        return bytes != null ? bytes.get(index) : chars.get(index);
+    }
+
+    @Override
+    public void consume() {
+        if (position >= size) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        position++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        if (i < 0) {
+            // LA(-1) is the last consumed character
+            i++;
+            if (position + i - 1 < 0) {
+                return IntStream.EOF;
+            }
+        }
+        int index = position + i - 1;
+        if (index >= size) {
+            return IntStream.EOF;
+        }
+        return charAt(index);
+    }
+
+    @Override
+    public int mark() {
+        // The whole input is always available, there is nothing to keep
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return position;
+    }
+
+    @Override
+    public void seek(int index) {
+        position = Math.min(index, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = interval.a;
+        int stop = Math.min(interval.b, size - 1);
+        if (start >= size || stop < start) {
+            return "";
+        }
+
+        if (chars != null) {
+            return chars.subSequence(start, stop + 1).toString();
+        }
+        StringBuilder text = new StringBuilder(stop - start + 1);
+        for (int i = start; i <= stop; i++) {
+            text.append((char) charAt(i));
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, size - 1));
+    }
+}
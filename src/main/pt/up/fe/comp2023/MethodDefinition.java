@@ -6,22 +6,28 @@ import pt.up.fe.comp.jmm.analysis.table.Type;
 import java.util.List;
 
 public class MethodDefinition {
-    private String methodName;
-    private Type returnType;
-    private List<Symbol> parameters;
-    private List<Symbol> variables;
-
-    public MethodDefinition(String methodName, Type returnType, List<Symbol> parameters, List<Symbol> variables) {
-        this.methodName = methodName;
+    private final String methodName;
+    private final Type returnType;
+    private final List<Symbol> parameters;
+    private final List<Symbol> variables;
+    private final MethodSignature signature;
+
+    public MethodDefinition(MethodSignature signature, Type returnType, List<Symbol> parameters, List<Symbol> variables) {
+        this.methodName = signature.getName();
         this.returnType = returnType;
         this.parameters = parameters;
         this.variables = variables;
+        this.signature = signature;
     }
 
     public String getMethodName() {
         return methodName;
     }
 
+    public MethodSignature getSignature() {
+        return signature;
+    }
+
     public Type getReturnType() {
         return returnType;
     }
@@ -0,0 +1,80 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.analysis.table.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The name and parameter types of a method, which tell overloads apart. Signatures are made by
+ * {@link MySymbolTable#getSignature}, with the name and types interned and the types also kept as IDs, so that they can
+ * be used as keys of the method table and of calls looked up in it. Only signatures of the same table can be compared.
+ */
+public class MethodSignature {
+
+    private final String name;
+    private final List<Type> parameterTypes;
+    private final int[] parameterTypeIds;
+    private final int hash;
+
+    MethodSignature(Interner interner, String name, List<Type> parameterTypes) {
+        List<Type> types = new ArrayList<>(parameterTypes.size());
+        this.parameterTypeIds = new int[parameterTypes.size()];
+        for (int i = 0; i < parameterTypeIds.length; i++) {
+            Type type = interner.intern(parameterTypes.get(i));
+            types.add(type);
+            this.parameterTypeIds[i] = interner.getTypeId(type);
+        }
+        this.name = interner.intern(name);
+        this.parameterTypes = Collections.unmodifiableList(types);
+        this.hash = 31 * interner.getId(name) + Arrays.hashCode(parameterTypeIds);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Type> getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public int getArity() {
+        return parameterTypeIds.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MethodSignature)) {
+            return false;
+        }
+        // Interned, the names are the same instance
+        MethodSignature other = (MethodSignature) obj;
+        return hash == other.hash && name == other.name && Arrays.equals(parameterTypeIds, other.parameterTypeIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * @return the signature as in error messages, such as foo(int,boolean[]), with ? for the types that are not known
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(name).append('(');
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            Type type = parameterTypes.get(i);
+            builder.append("#UNKNOWN".equals(type.getName()) ? "?" : type.print());
+        }
+        return builder.append(')').toString();
+    }
+}
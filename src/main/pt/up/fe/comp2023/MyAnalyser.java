@@ -4,22 +4,40 @@ import pt.up.fe.comp.jmm.analysis.JmmAnalysis;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
-import pt.up.fe.specs.util.SpecsCollections;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 public class MyAnalyser implements JmmAnalysis {
+
+    private final Function<Map<String, String>, ImportResolver> importResolvers;
+
+    public MyAnalyser() {
+        this(ImportResolver::fromConfig);
+    }
+
+    /**
+     * @param importResolvers gives the resolver of the imports of a compilation, from its config
+     */
+    public MyAnalyser(Function<Map<String, String>, ImportResolver> importResolvers) {
+        this.importResolvers = importResolvers;
+    }
+
     public JmmSemanticsResult semanticAnalysis(JmmParserResult parserResult) {
 
-        MySymbolTable symbolTable = new MySymbolTable();
-        MyVisitor visitor = new MyVisitor(symbolTable, "");
-        String generatedCode = visitor.visit(parserResult.getRootNode(),"");
-        List<Report> symbolTableReports = parserResult.getReports();
-        //List<Report> reports = new ArrayList<>();
-        List<Report> analysisReports = new MyAnalyserVisitor(symbolTable).visit(parserResult.getRootNode(), symbolTable);
-        List<Report> reports = SpecsCollections.concat(symbolTableReports, analysisReports);
+        MySymbolTable.Builder builder = MySymbolTable.builder()
+                .setImportResolver(importResolvers.apply(parserResult.getConfig()));
+        MyVisitor visitor = new MyVisitor(builder, "");
+        MySymbolTable symbolTable = StageMetrics.measure("symbolTable", () -> {
+            visitor.visit(parserResult.getRootNode(), "");
+            return builder.build();
+        });
+        List<Report> analysisReports = StageMetrics.measure("analysis",
+                () -> new MyAnalyserVisitor(symbolTable).visit(parserResult.getRootNode(), symbolTable));
 
-        return new JmmSemanticsResult(parserResult, symbolTable, reports);
+        // The parser reports are added by JmmSemanticsResult itself
+        return new JmmSemanticsResult(parserResult, symbolTable, analysisReports);
     }
 }
@@ -5,25 +5,38 @@ import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 
 public class MyAnalyserUtils {
-    static MySymbolTable symbolTable = new MySymbolTable();
+    private final MySymbolTable symbolTable;
 
     public MyAnalyserUtils(MySymbolTable symbolTable) {
-        MyAnalyserUtils.symbolTable = symbolTable;
+        this.symbolTable = symbolTable;
     }
 
-    public static Type getType(JmmNode jmmNode) {
+    public Type getType(JmmNode jmmNode) {
         if (Objects.equals(jmmNode.getKind(), "ArrayType") || Objects.equals(jmmNode.getKind(), "NewArrayDeclaration") || Objects.equals(jmmNode.getKind(), "ArrayDeclaration")) {
-            return new Type(getType(jmmNode.getJmmChild(0)).getName(), true);
+            return symbolTable.getInterner().getType(getType(jmmNode.getJmmChild(0)).getName(), true);
         }
         if (jmmNode.getKind().equals("Integer"))
-            return new Type("int", false);
+            return Interner.INT;
         if (jmmNode.getKind().equals("Boolean"))
-            return new Type("boolean", false);
+            return Interner.BOOLEAN;
         if (jmmNode.getKind().equals("Void"))
-            return new Type("void", false);
+            return Interner.VOID;
+        if (jmmNode.getKind().equals("This"))
+            return symbolTable.getInterner().getType(symbolTable.getClassName(), false);
+        // Locals hide parameters, which hide fields
+        if (jmmNode.getKind().equals("Identifier")) {
+            Optional<JmmNode> methodNode = jmmNode.getAncestor("GeneralMethod")
+                    .or(() -> jmmNode.getAncestor("MainMethod"));
+            Optional<ScopedSymbol> symbol = methodNode
+                    .flatMap(method -> symbolTable.resolve(method, jmmNode.get("name")));
+            if (symbol.isPresent()) {
+                return symbol.get().getType();
+            }
+        }
         List<Symbol> fields = symbolTable.getFields();
         //System.out.println("the fields are " + fields);
         for (Symbol i : fields) {
@@ -32,32 +45,18 @@ public class MyAnalyserUtils {
             }
         }
         try {
-            if (jmmNode.getKind().equals("Identifier")) {
-                JmmNode methodNode = jmmNode.getJmmParent();
-                while (!methodNode.getKind().equals("GeneralMethod") && !methodNode.getKind().equals("MainMethod"))
-                    methodNode = methodNode.getJmmParent();
-                String parent = methodNode.get("methodName");
-                if (symbolTable.getLocalVariables(parent) != null) {
-                    List<Symbol> localVariables = symbolTable.getLocalVariables(parent);
-                    for (Symbol i : localVariables) {
-                        if (jmmNode.get("name").equals(i.getName())) {
-                            return i.getType();
-                        }
-                    }
-                }
-            }
             JmmNode methodNode = jmmNode;
             while ((!methodNode.hasAttribute("name")))
                 methodNode = methodNode.getJmmParent();
-            return new Type(methodNode.get("name"), false);
+            return symbolTable.getInterner().getType(methodNode.get("name"), false);
         } catch (Exception e) {
             if(jmmNode.getKind().equals("MethodCall")){return getType(jmmNode.getJmmChild(0));}
-            return new Type(jmmNode.get("name"), false);
+            return symbolTable.getInterner().getType(jmmNode.get("name"), false);
         }
     }
 
 
-    public static Symbol getSymbol(JmmNode jmmNode) {
+    public Symbol getSymbol(JmmNode jmmNode) {
         String name = jmmNode.get("name");
         Type type = getType(jmmNode.getJmmChild(0));
         return new Symbol(type, name);
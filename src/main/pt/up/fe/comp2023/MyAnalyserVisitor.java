@@ -9,23 +9,37 @@ import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.specs.util.SpecsCollections;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.function.BiFunction;
 
 import static java.util.Objects.isNull;
-import static pt.up.fe.comp2023.MyAnalyserUtils.getType;
 import static pt.up.fe.comp2023.MyReportUtils.ambiguousMethodCallReport;
 
 public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Report>> {
-    //static final List<String> PRIMITIVES = Arrays.asList("int", "void", "boolean");
-    private static List<String> PRIMITIVES = new ArrayList<>(Arrays.asList("int", "void", "boolean", "String"));
+    private static final List<String> BUILT_IN_TYPES = List.of("int", "void", "boolean", "String");
+    // The built-in types, the class and the imports of this compilation
+    private final Set<String> primitives = new HashSet<>(BUILT_IN_TYPES);
     private List<Report> reports = new ArrayList<>();
-    private MyAnalyserUtils myAnalyserUtils;
+    private final MyAnalyserUtils myAnalyserUtils;
+    private final MySymbolTable table;
 
     public MyAnalyserVisitor(MySymbolTable symbolTable){
-        PRIMITIVES.add(symbolTable.getClassName());
-        PRIMITIVES.addAll(symbolTable.getImports());
+        primitives.add(symbolTable.getClassName());
+        primitives.addAll(symbolTable.getImports());
         myAnalyserUtils = new MyAnalyserUtils(symbolTable);
+        table = symbolTable;
     }
 
+    private Type getType(JmmNode jmmNode) {
+        return myAnalyserUtils.getType(jmmNode);
+    }
+
+
+    private final VisitCache<SymbolTable, List<Report>> visitCache = new VisitCache<>();
+
+    @Override
+    protected BiFunction<JmmNode, SymbolTable, List<Report>> getVisit(JmmNode node) {
+        return visitCache.get(node, super::getVisit);
+    }
 
     @Override
     protected void buildVisitor() {
@@ -71,7 +85,7 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
             reports.add(MyReportUtils.cyclicInheritance(jmmNode, extendsName));
             return reports;
         }
-        if (symbolTable.getImports().contains(extendsName))
+        if (table.isImported(extendsName))
             return reports;
 
         reports.add(MyReportUtils.cannotFindSymbolReport(jmmNode, extendsName));
@@ -86,7 +100,7 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
         if (objType.isArray()) {
             return dealWithType(jmmNode.getJmmChild(0), symbolTable);
         }
-        if (PRIMITIVES.contains(objType.getName()) || symbolTable.getImports().contains(objType.getName())) {
+        if (primitives.contains(objType.getName()) || table.isImported(objType.getName())) {
             return reports;
         }
         reports.add(MyReportUtils.cannotFindTypeReport(jmmNode, jmmNode.get("name")));
@@ -106,17 +120,25 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
         if (type1.getName().equals("boolean") && (type2.getName().equals("false") || (type2.getName().equals("true")))) return true; //I know... I know...
         if (type1.isArray() != type2.isArray()) return false;
         if (type1.isArray() && type2.isArray() && type1.getName().equals(type2.getName())) return false;
-        if ((symbolTable.getImports().contains(type1.getName()) &&
-                symbolTable.getImports().contains(type2.getName()))) return true;
-        if ((symbolTable.getImports().contains(type1.getName()) ||
-                symbolTable.getImports().contains(type2.getName())) && sup != "" && sup != "null" && sup != null) return true;
+        boolean imported1 = table.isImported(type1.getName());
+        boolean imported2 = table.isImported(type2.getName());
+        if (imported1 && imported2 && isIndexed(type1) && isIndexed(type2))
+            return table.getImportResolver().isSubclass(table.getImportedName(type2.getName()),
+                    table.getImportedName(type1.getName()));
+        if (imported1 && imported2) return true;
+        if ((imported1 || imported2) && sup != "" && sup != "null" && sup != null) return true;
         if (symbolTable.getClassName().equals(type1.getName())) return true;
-        if (PRIMITIVES.contains(type1.getName()) || PRIMITIVES.contains(type2.getName())) return false;
+        if (primitives.contains(type1.getName()) || primitives.contains(type2.getName())) return false;
         if (type2.getName().equals(symbolTable.getClassName()) && symbolTable.getSuper() == null) return false;
         if (symbolTable.getSuper() == null) return true;
         return !(type1.getName().equals(symbolTable.getClassName()) && symbolTable.getSuper().equals(type2.getName()));
     }
 
+    private boolean isIndexed(Type type) {
+        return table.getImportResolver() != null && table.getImportResolver().getClass(table.getImportedName(type.getName()))
+                .isPresent();
+    }
+
     private List<Report> dealWithBinaryOpCompare(JmmNode jmmNode, SymbolTable symbolTable) {
         //List<Report> reports = new ArrayList<>();
         Type lhsType = getType(jmmNode.getJmmChild(0));
@@ -152,12 +174,12 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
             return reports;
         }
 
-        if (!PRIMITIVES.contains(lhsType.getName())) {
+        if (!primitives.contains(lhsType.getName())) {
             putUnknownType(jmmNode);
             reports.add(MyReportUtils.operatorCannotBeAppliedReport(jmmNode, jmmNode.get("op"), lhsType.print(), rhsType.print()));
             return reports;
         }
-        putType(jmmNode, new Type("boolean", false));
+        putType(jmmNode, Interner.BOOLEAN);
 
         return reports;
     }
@@ -196,12 +218,12 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
             return reports;
         }
 
-        if (!PRIMITIVES.contains(lhsType.getName())) {
+        if (!primitives.contains(lhsType.getName())) {
             putUnknownType(jmmNode);
             reports.add(MyReportUtils.operatorCannotBeAppliedReport(jmmNode, jmmNode.get("op"), lhsType.print(), rhsType.print()));
             return reports;
         }
-        putType(jmmNode, new Type("boolean", false));
+        putType(jmmNode, Interner.BOOLEAN);
         //putType(jmmNode, lhsType); TODO check which version is correct
 
         return reports;
@@ -235,7 +257,7 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
             return reports;
         }
 
-        if (!PRIMITIVES.contains(lhsType.getName())) {
+        if (!primitives.contains(lhsType.getName())) {
             putUnknownType(jmmNode);
             reports.add(MyReportUtils.operatorCannotBeAppliedReport(jmmNode, jmmNode.get("op"), lhsType.print(), rhsType.print()));
             return reports;
@@ -261,7 +283,7 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
             return reports;
         }
 
-        putType(jmmNode, new Type("boolean", false));
+        putType(jmmNode, Interner.BOOLEAN);
 
         return reports;
     }
@@ -285,24 +307,27 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
       return reports;
     }
     private List<Report> dealWithMethod(JmmNode jmmNode, SymbolTable symbolTable) {
-        if (!MyAnalyserUtils.getType(jmmNode.getJmmChild(0)).getName().equals(symbolTable.getClassName())) {
-            String methodSignature = inferMethodSignature(jmmNode);
-            boolean methodExists = symbolTable.getMethods().contains(jmmNode.get("methodName"));
+        if (!getType(jmmNode.getJmmChild(0)).getName().equals(symbolTable.getClassName())) {
+            MethodSignature methodSignature = inferMethodSignature(jmmNode);
+            boolean methodExists = table.hasMethod(jmmNode.get("methodName"));
 
             if (methodExists) {
-                String symbolName = myAnalyserUtils.getMethodSymbolName(methodSignature);
-                //reports.add(MyReportUtils.nonStaticInStaticContext(jmmNode, "method", symbolName));
+                //reports.add(MyReportUtils.nonStaticInStaticContext(jmmNode, "method", methodSignature.toString()));
             } else if (symbolTable.getSuper() == null && symbolTable.getImports().isEmpty()) {
-                String symbolName = myAnalyserUtils.getMethodSymbolName(methodSignature);
-                reports.add(MyReportUtils.cannotFindSymbolReport(jmmNode, symbolName));
+                reports.add(MyReportUtils.cannotFindSymbolReport(jmmNode, methodSignature.toString()));
             }
         }
         putAssumeType(jmmNode);
         if(jmmNode.getKind().equals("GeneralMethod")){
             JmmNode returnNode = jmmNode.getJmmChild(jmmNode.getNumChildren() - 1);
-            if(!typeIsCompatibleWith(getType(returnNode),symbolTable.getReturnType(jmmNode.get("methodName")), symbolTable)) {
+            // The overload declared by this node
+            Type returnType = table.getMethod(jmmNode)
+                    .map(MethodDefinition::getReturnType)
+                    .orElseThrow(() -> new IllegalStateException("No symbol table entry for method "
+                            + jmmNode.get("methodName")));
+            if(!typeIsCompatibleWith(getType(returnNode), returnType, symbolTable)) {
                 reports.add(MyReportUtils.incompatibleTypesReport(returnNode,
-                        getType(returnNode).getName(), symbolTable.getReturnType(jmmNode.get("methodName")).getName()));
+                        getType(returnNode).getName(), returnType.getName()));
             }
         }
         return reports;
@@ -310,36 +335,47 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
 
     private List<Report> dealWithMethodCall(JmmNode jmmNode, SymbolTable symbolTable) {
             String methodName = jmmNode.get("methodName");
-            List<String> imports = symbolTable.getImports();
             String mainClass = symbolTable.getClassName();
             String extension = symbolTable.getSuper();
-            List<String> methods = symbolTable.getMethods();
+            putImportedReturnType(jmmNode);
         if(reports.size() > 0)
                 return reports;
-            if((getType(jmmNode.getJmmChild(0)).getName().equals(mainClass) && !isNull(extension)) ||
-                    imports.contains(getType(jmmNode.getJmmChild(0)).getName()) ||
+            // With a superclass the call may be to an inherited method, it is only typed if it is one of this class
+            if(getType(jmmNode.getJmmChild(0)).getName().equals(mainClass) && !isNull(extension)) {
+                List<Type> argTypes = new ArrayList<>();
+                for (int i = 1; i < jmmNode.getNumChildren(); i++) {
+                    argTypes.add(getType(jmmNode.getJmmChild(i)));
+                }
+                resolveOverload(methodName, table.getOverloads(methodName, argTypes.size()), argTypes, symbolTable)
+                        .ifPresent(method -> putType(jmmNode, method.getReturnType()));
+                return reports;
+            }
+            if(table.isImported(getType(jmmNode.getJmmChild(0)).getName()) ||
                     getType(jmmNode.getJmmChild(0)).getName().equals("#ASSUME") ||
-                    (jmmNode.getJmmChild(0).hasAttribute("value") && imports.contains(jmmNode.getJmmChild(0).get("value")))){
+                    (jmmNode.getJmmChild(0).hasAttribute("value") && table.isImported(jmmNode.getJmmChild(0).get("value")))){
                 return reports;
             }
-            if(methods.contains(methodName) && getType(jmmNode.getJmmChild(0)).getName().equals(mainClass)){
-                if(symbolTable.getParameters(methodName).size() != jmmNode.getNumChildren() - 1){
+            if(table.hasMethod(methodName) && getType(jmmNode.getJmmChild(0)).getName().equals(mainClass)){
+                List<MethodDefinition> candidates = table.getOverloads(methodName, jmmNode.getNumChildren() - 1);
+                if(candidates.isEmpty()){
                     reports.add(ambiguousMethodCallReport(jmmNode, methodName));
                     return reports;
                 }
-                int i = 1;
-                for (Symbol param : symbolTable.getParameters(methodName)) {
+                List<Type> argTypes = new ArrayList<>();
+                for (int i = 1; i < jmmNode.getNumChildren(); i++) {
                     visit(jmmNode.getJmmChild(i));
                     if(reports.size() > 0)
-                        break;
-                    if(!param.getType().getName().equals(getType(jmmNode.getJmmChild(i)).getName()) ||
-                            param.getType().isArray() != getType(jmmNode.getJmmChild(i)).isArray()){
-                        reports.add(ambiguousMethodCallReport(jmmNode, methodName));
-                        break;
-                    }
-                    i++;
+                        return reports;
+                    argTypes.add(getType(jmmNode.getJmmChild(i)));
                 }
-            } else if(!methods.contains(methodName)){
+                Optional<MethodDefinition> method = resolveOverload(methodName, candidates, argTypes, symbolTable);
+                if(method.isEmpty()){
+                    reports.add(ambiguousMethodCallReport(jmmNode, methodName));
+                    return reports;
+                }
+                // The call has the type of the overload it refers to
+                putType(jmmNode, method.get().getReturnType());
+            } else if(!table.hasMethod(methodName)){
                 reports.add(ambiguousMethodCallReport(jmmNode, methodName));
             } else if(!getType(jmmNode.getJmmChild(0)).getName().equals(mainClass))
                 reports.add(ambiguousMethodCallReport(jmmNode, methodName));
@@ -348,40 +384,86 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
 
 
 
-    private boolean signatureIsCompatibleWith(String sig1, String sig2, SymbolTable symbolTable) {
-        List<String> m1 = Arrays.asList(sig1.split("(?<!#)#"));
-        List<String> m2 = Arrays.asList(sig2.split("(?<!#)#"));
-
-        if (!m1.get(0).equals(m2.get(0)) || m1.size() != m2.size()) return false;
-        m1 = m1.subList(1, m1.size());
-        m2 = m2.subList(1, m2.size());
-
-        for (int i = 0; i < m1.size(); i++) {
-            if (m1.get(i).equals("#UNKNOWN") || m2.get(i).equals("#UNKNOWN")) continue;
-            Type t1 = new Type(m1.get(i).split("\\[]")[0], m1.get(i).endsWith("[]"));
-            Type t2 = new Type(m2.get(i).split("\\[]")[0], m2.get(i).endsWith("[]"));
-            if (!typeIsCompatibleWith(t1, t2, symbolTable)) return false;
+    /**
+     * Picks the overload a call refers to among those with as many parameters as arguments: the only one whose
+     * parameters accept the arguments, or if there are several, the one whose parameters are the types of the
+     * arguments. Arguments of unknown or assumed type match any parameter, as in {@link ImportResolver}.
+     *
+     * @return the overload, or empty if none accepts the arguments or the call is ambiguous
+     */
+    private Optional<MethodDefinition> resolveOverload(String methodName, List<MethodDefinition> candidates,
+                                                       List<Type> argTypes, SymbolTable symbolTable) {
+        List<MethodDefinition> applicable = new ArrayList<>();
+        for (MethodDefinition candidate : candidates) {
+            if (accepts(candidate, argTypes, symbolTable)) {
+                applicable.add(candidate);
+            }
         }
+        if (applicable.size() == 1) {
+            return Optional.of(applicable.get(0));
+        }
+        return applicable.isEmpty() ? Optional.empty() : table.getMethod(table.getSignature(methodName, argTypes));
+    }
 
+    private boolean accepts(MethodDefinition method, List<Type> argTypes, SymbolTable symbolTable) {
+        List<Symbol> parameters = method.getParameters();
+        for (int i = 0; i < argTypes.size(); i++) {
+            Type argType = argTypes.get(i);
+            Type parameterType = parameters.get(i).getType();
+            if (argType.getName().equals("#UNKNOWN") || argType.getName().equals("#ASSUME")) {
+                continue;
+            }
+            // Built-in types only accept themselves, objects follow the rules of assignments
+            if (BUILT_IN_TYPES.contains(parameterType.getName()) || BUILT_IN_TYPES.contains(argType.getName())) {
+                if (!parameterType.equals(argType)) {
+                    return false;
+                }
+            } else if (!typeIsCompatibleWith(parameterType, argType, symbolTable)) {
+                return false;
+            }
+        }
         return true;
     }
 
-    private String inferMethodSignature(JmmNode jmmNode) {
-        StringBuilder methodSignatureBuilder = new StringBuilder();
-        methodSignatureBuilder.append(jmmNode.get("methodName"));
+    /**
+     * Calls on imported classes get the return type of the matching method of the class file, if it is known.
+     */
+    private void putImportedReturnType(JmmNode jmmNode) {
+        String receiver;
+        try {
+            receiver = getType(jmmNode.getJmmChild(0)).getName();
+        } catch (RuntimeException e) {
+            return;
+        }
+        if (!table.isImported(receiver) || table.getImportResolver() == null) {
+            return;
+        }
+
+        List<Type> argTypes = new ArrayList<>();
+        for (int i = 1; i < jmmNode.getNumChildren(); i++) {
+            try {
+                argTypes.add(getType(jmmNode.getJmmChild(i)));
+            } catch (RuntimeException e) {
+                // Not every expression has a type yet, let it match any parameter
+                argTypes.add(new Type("#UNKNOWN", false));
+            }
+        }
+        table.getImportResolver()
+                .getReturnType(table.getImportedName(receiver), jmmNode.get("methodName"), argTypes)
+                .ifPresent(type -> putType(jmmNode, type));
+    }
+
+    private MethodSignature inferMethodSignature(JmmNode jmmNode) {
+        List<Type> argTypes = new ArrayList<>();
         if(!jmmNode.getJmmChild(0).getKind().equals("IDStringType")){
-        for (JmmNode argument: jmmNode.getJmmChild(0).getChildren()) {
-            Type argType = getType(argument);
-            methodSignatureBuilder.append("#");
-            methodSignatureBuilder.append(argType.print());
+            for (JmmNode argument: CompactJmmNode.childrenOf(jmmNode.getJmmChild(0))) {
+                argTypes.add(getType(argument));
             }
         }
         else{
-            Type argType = getType(jmmNode.getJmmChild(0));
-            methodSignatureBuilder.append("#");
-            methodSignatureBuilder.append(argType.print());
+            argTypes.add(getType(jmmNode.getJmmChild(0)));
         }
-        return methodSignatureBuilder.toString();
+        return table.getSignature(jmmNode.get("methodName"), argTypes);
     }
 
     private List<Report> checkCondition(JmmNode jmmNode, SymbolTable symbolTable) {
@@ -399,21 +481,16 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
     }
 
     private List<Report> dealWithAssignment(JmmNode jmmNode, SymbolTable symbolTable) {
-        String parent = jmmNode.getJmmParent().get("methodName");
-        List<Symbol> localVariables = symbolTable.getLocalVariables(parent);
         Type lhsType = null;
         Type rhsType;
-        for(Symbol i : localVariables){
-            if(jmmNode.get("var").equals(i.getName())){
-                jmmNode.put("name", i.getType().getName());
-                jmmNode.put("isArray", String.valueOf(i.getType().isArray()));
-                lhsType = i.getType();
-                break;
-            }
+        // Locals hide parameters, which hide fields
+        Optional<ScopedSymbol> variable = table.resolve(jmmNode.getJmmParent(), jmmNode.get("var"));
+        if (variable.isPresent()) {
+            jmmNode.put("name", variable.get().getType().getName());
+            jmmNode.put("isArray", String.valueOf(variable.get().getType().isArray()));
+            lhsType = variable.get().getType();
         }
         rhsType = getType(jmmNode.getJmmChild(0));
-        System.out.println(rhsType);
-        System.out.println(jmmNode.getJmmChild(0).getKind());
 
         if (lhsType.getName().equals("#ASSUME")) {
             return reports;
@@ -443,12 +520,12 @@ public class MyAnalyserVisitor extends PostorderJmmVisitor<SymbolTable, List<Rep
     }
 
     private List<Report> dealWithNewArrayDeclaration(JmmNode jmmNode, SymbolTable symbolTable) {
-        Type type = MyAnalyserUtils.getType(jmmNode.getJmmChild(0));
+        Type type = getType(jmmNode.getJmmChild(0));
         if (!type.getName().equals("#ASSUME") && !(type.getName().equals("int") && !type.isArray())) {
             reports.add(MyReportUtils.incompatibleTypesReport(jmmNode, type.print(), "int"));
         }
 
-        putType(jmmNode, new Type("int", true));
+        putType(jmmNode, Interner.INT_ARRAY);
 
         return reports;
     }
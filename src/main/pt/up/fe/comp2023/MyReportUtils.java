@@ -6,6 +6,10 @@ import pt.up.fe.comp.jmm.report.ReportType;
 import pt.up.fe.comp.jmm.report.Stage;
 public class MyReportUtils {
     private static Report baseReport(JmmNode at, ReportType type, Stage stage, String message) {
+        if (at instanceof CompactJmmNode) {
+            CompactJmmNode node = (CompactJmmNode) at;
+            return new Report(type, stage, node.getLineStart(), node.getColStart(), message);
+        }
         return new Report(type, stage, Integer.parseInt(at.get("lineStart")), Integer.parseInt(at.get("colStart")), message);
     }
 
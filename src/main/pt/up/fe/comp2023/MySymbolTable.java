@@ -6,74 +6,385 @@ import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * The symbol table of a class. A table is made by a {@link Builder} and cannot be changed once built, so the stages
+ * after the analysis can read it from several threads. To change a table, make a new one with {@link #toBuilder()}.
+ */
 public class MySymbolTable implements SymbolTable {
 
-    private final List<String> imports = new ArrayList<>();
-    private String className = null;
-    private String superClass = null;
-    private List<Symbol> fields = new ArrayList<Symbol>();
-    private final Map<String, MethodDefinition> methods = new HashMap<>();
+    private final Interner interner;
+    private final List<String> imports;
+    // The full name of each import, by the simple name the code refers to it with
+    private final Map<String, String> importsByName;
+    private final ImportResolver importResolver;
+    private final String className;
+    private final String superClass;
+    private final List<Symbol> fields;
+    private final Map<String, ScopedSymbol> fieldsByName;
+    private final Map<MethodSignature, MethodDefinition> methods;
+    // The overloads of each name, in the order they were added
+    private final Map<String, List<MethodDefinition>> overloads;
+    private final List<String> methodNames;
+    // The parameters and local variables of each method, the names visible in it besides the fields
+    private final Map<MethodDefinition, Map<String, ScopedSymbol>> scopes;
+
+    private MySymbolTable(Builder builder) {
+        this.interner = builder.interner.freeze();
+        this.imports = List.copyOf(builder.imports);
+        Map<String, String> importsByName = new HashMap<>();
+        for (String importDeclaration : imports) {
+            importsByName.put(importDeclaration.substring(importDeclaration.lastIndexOf('.') + 1), importDeclaration);
+        }
+        this.importsByName = Collections.unmodifiableMap(importsByName);
+        this.importResolver = builder.importResolver;
+        this.className = builder.className;
+        this.superClass = builder.superClass;
+        this.fields = Collections.unmodifiableList(new ArrayList<>(builder.fields));
+
+        Map<String, ScopedSymbol> fieldsByName = new HashMap<>();
+        for (Symbol field : fields) {
+            fieldsByName.putIfAbsent(field.getName(), new ScopedSymbol(field, ScopedSymbol.Kind.FIELD, -1));
+        }
+        this.fieldsByName = Collections.unmodifiableMap(fieldsByName);
+
+        this.methods = Collections.unmodifiableMap(new LinkedHashMap<>(builder.methods));
+        Map<String, List<MethodDefinition>> overloads = new LinkedHashMap<>();
+        Map<MethodDefinition, Map<String, ScopedSymbol>> scopes = new HashMap<>();
+        for (MethodDefinition method : methods.values()) {
+            overloads.computeIfAbsent(method.getMethodName(), name -> new ArrayList<>()).add(method);
+            scopes.put(method, buildScope(method));
+        }
+        overloads.replaceAll((name, sameName) -> List.copyOf(sameName));
+        this.overloads = Collections.unmodifiableMap(overloads);
+        this.methodNames = List.copyOf(overloads.keySet());
+        this.scopes = Collections.unmodifiableMap(scopes);
+    }
+
+    public static Builder builder() {
+        return new Builder(new Interner());
+    }
+
+    /**
+     * @return a builder with everything in this table
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder(interner.copy());
+        builder.imports.addAll(imports);
+        builder.importResolver = importResolver;
+        builder.className = className;
+        builder.superClass = superClass;
+        builder.fields.addAll(fields);
+        builder.methods.putAll(methods);
+        return builder;
+    }
+
+    /**
+     * @return the interner of the names and types of this table, every symbol in it is interned
+     */
+    public Interner getInterner() {
+        return interner;
+    }
 
     @Override
     public List<String> getImports() {
         return imports;
     }
 
-    public void addImport(String importDeclaration) {
-        imports.add(importDeclaration);
+    /**
+     * @return true if a class with the given simple name was imported
+     */
+    public boolean isImported(String name) {
+        return importsByName.containsKey(name);
+    }
+
+    /**
+     * @return the full name of the import with the given simple name, or the name itself if it was not imported, as
+     * the classes of the default package
+     */
+    public String getImportedName(String name) {
+        return importsByName.getOrDefault(name, name);
+    }
+
+    public ImportResolver getImportResolver() {
+        return importResolver;
     }
+
     @Override
     public String getClassName() {
         return className;
     }
 
-    public void setClassName(String name){
-        this.className = name;
-    }
-
     @Override
     public String getSuper() {
         return superClass;
     }
 
-    public void setSuper(String name){
-        this.superClass = name;
-    }
-
     @Override
     public List<Symbol> getFields() {
         return fields;
     }
 
-    public void addField(Symbol field){
-        fields.add(field);
+    public Optional<Symbol> getField(String name) {
+        return Optional.ofNullable(fieldsByName.get(name)).map(ScopedSymbol::getSymbol);
+    }
+
+    public boolean isField(String name) {
+        return fieldsByName.containsKey(name);
     }
 
     @Override
     public List<String> getMethods() {
-        return new ArrayList<>(methods.keySet());
+        return methodNames;
+    }
+
+    public boolean hasMethod(String methodName) {
+        return overloads.containsKey(methodName);
+    }
+
+    public Collection<MethodDefinition> getMethodDefinitions() {
+        return methods.values();
+    }
+
+    public Optional<MethodDefinition> getMethod(MethodSignature signature) {
+        return Optional.ofNullable(methods.get(signature));
+    }
+
+    public List<MethodDefinition> getOverloads(String methodName) {
+        return overloads.getOrDefault(methodName, List.of());
+    }
+
+    /**
+     * @return the overloads of the method that take the given number of arguments
+     */
+    public List<MethodDefinition> getOverloads(String methodName, int arity) {
+        List<MethodDefinition> candidates = new ArrayList<>();
+        for (MethodDefinition method : getOverloads(methodName)) {
+            if (method.getSignature().getArity() == arity) {
+                candidates.add(method);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return the entry of a method declaration node
+     */
+    public Optional<MethodDefinition> getMethod(JmmNode declaration) {
+        List<MethodDefinition> sameName = overloads.get(MyVisitor.getMethodName(declaration));
+        if (sameName == null) {
+            return Optional.empty();
+        }
+        // The parameters only need to be read from the node when the name is overloaded
+        return sameName.size() == 1 ? Optional.of(sameName.get(0))
+                : getMethod(getSignature(interner, declaration));
     }
 
-    public void addMethod(String methodName, Type returnType, List<Symbol> parameters, List<Symbol> variables) {
-        methods.put(methodName, new MethodDefinition(methodName, returnType, parameters, variables));
+    public MethodSignature getSignature(String methodName, List<Type> parameterTypes) {
+        return new MethodSignature(interner, methodName, parameterTypes);
+    }
+
+    private static MethodSignature getSignature(Interner interner, JmmNode declaration) {
+        return new MethodSignature(interner, MyVisitor.getMethodName(declaration),
+                typesOf(MyVisitor.getParameters(declaration)));
+    }
+
+    private static List<Type> typesOf(List<Symbol> symbols) {
+        List<Type> types = new ArrayList<>(symbols.size());
+        for (Symbol symbol : symbols) {
+            types.add(symbol.getType());
+        }
+        return types;
+    }
+
+    /**
+     * The methods of SymbolTable take a name, which does not say which overload it is. They fail for overloaded names,
+     * whose entries must be found with {@link #getMethod(JmmNode)} or {@link #getMethod(MethodSignature)}.
+     */
+    private MethodDefinition getMethod(String methodName) {
+        List<MethodDefinition> sameName = overloads.get(methodName);
+        if (sameName == null) {
+            return null;
+        }
+        if (sameName.size() > 1) {
+            throw new IllegalStateException("Method '" + methodName + "' is overloaded, it must be found by its "
+                    + "declaration or signature, not by name");
+        }
+        return sameName.get(0);
     }
 
     @Override
     public Type getReturnType(String methodName) {
-        return methods.get(methodName).getReturnType();
+        return getMethod(methodName).getReturnType();
     }
 
     @Override
     public List<Symbol> getParameters(String methodName) {
-        return methods.get(methodName).getParameters();
+        return getMethod(methodName).getParameters();
     }
 
     @Override
     public List<Symbol> getLocalVariables(String methodName) {
-        return methods.get(methodName).getLocalVariables();
+        return getMethod(methodName).getLocalVariables();
+    }
+
+    /**
+     * Same as the default, with one line per overload, named by its signature.
+     */
+    @Override
+    public String print() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Class: ").append(className).append('\n');
+        builder.append("Super: ").append(superClass != null ? superClass : "java.lang.Object").append('\n');
+        builder.append("\nImports:");
+        if (imports.isEmpty()) {
+            builder.append(" <no imports>\n");
+        } else {
+            builder.append('\n');
+            imports.forEach(fullImport -> builder.append(" - ").append(fullImport).append('\n'));
+        }
+
+        builder.append("\nFields:");
+        if (fields.isEmpty()) {
+            builder.append(" <no fields>\n");
+        } else {
+            builder.append('\n');
+            fields.forEach(field -> builder.append(" - ").append(field.print()).append('\n'));
+        }
+
+        builder.append("\nMethods: ").append(methods.size()).append('\n');
+        for (MethodDefinition method : methods.values()) {
+            boolean overloaded = overloads.get(method.getMethodName()).size() > 1;
+            builder.append(" - signature: ")
+                    .append(overloaded ? method.getSignature().toString() : method.getMethodName())
+                    .append("; returnType: ").append(method.getReturnType().print())
+                    .append("; params: ")
+                    .append(method.getParameters().isEmpty() ? " <no params>" : method.getParameters().stream()
+                            .map(Symbol::print).collect(Collectors.joining(", ")))
+                    .append("; local vars: ")
+                    .append(method.getLocalVariables().isEmpty() ? "<no vars>" : method.getLocalVariables().stream()
+                            .map(Symbol::print).collect(Collectors.joining(", ")))
+                    .append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Finds what a name refers to inside a method, with the scoping of Java: local variables hide parameters, which
+     * hide fields. Fails if the method is overloaded, use {@link #resolve(JmmNode, String)} then.
+     *
+     * @return the symbol, or empty if the name is not declared in the method or the class
+     */
+    public Optional<ScopedSymbol> resolve(String methodName, String name) {
+        return resolve(getMethod(methodName), name);
+    }
+
+    /**
+     * Same as {@link #resolve(String, String)}, in the overload declared by the given node.
+     */
+    public Optional<ScopedSymbol> resolve(JmmNode declaration, String name) {
+        return resolve(getMethod(declaration).orElse(null), name);
+    }
+
+    private Optional<ScopedSymbol> resolve(MethodDefinition method, String name) {
+        ScopedSymbol symbol = method != null ? scopes.get(method).get(name) : null;
+        return Optional.ofNullable(symbol != null ? symbol : fieldsByName.get(name));
+    }
+
+    private static Map<String, ScopedSymbol> buildScope(MethodDefinition method) {
+        Map<String, ScopedSymbol> scope = new HashMap<>();
+        List<Symbol> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            Symbol parameter = parameters.get(i);
+            scope.putIfAbsent(parameter.getName(), new ScopedSymbol(parameter, ScopedSymbol.Kind.PARAMETER, i));
+        }
+
+        Set<String> localNames = new HashSet<>();
+        for (Symbol local : method.getLocalVariables()) {
+            if (localNames.add(local.getName())) {
+                scope.put(local.getName(), new ScopedSymbol(local, ScopedSymbol.Kind.LOCAL, -1));
+            }
+        }
+        return Collections.unmodifiableMap(scope);
+    }
+
+    /**
+     * Collects the symbols of a class, interning them as they are added, and builds the table.
+     */
+    public static class Builder {
+
+        private final Interner interner;
+        private final List<String> imports = new ArrayList<>();
+        private ImportResolver importResolver = null;
+        private String className = null;
+        private String superClass = null;
+        private final List<Symbol> fields = new ArrayList<>();
+        private final Map<MethodSignature, MethodDefinition> methods = new LinkedHashMap<>();
+
+        private Builder(Interner interner) {
+            this.interner = interner;
+        }
+
+        public Builder addImport(String importDeclaration) {
+            imports.add(interner.intern(importDeclaration));
+            return this;
+        }
+
+        public Builder setImportResolver(ImportResolver importResolver) {
+            this.importResolver = importResolver;
+            return this;
+        }
+
+        public Builder setClassName(String name) {
+            this.className = interner.intern(name);
+            return this;
+        }
+
+        public Builder setSuper(String name) {
+            this.superClass = interner.intern(name);
+            return this;
+        }
+
+        public Builder addField(Symbol field) {
+            fields.add(interner.intern(field));
+            return this;
+        }
+
+        /**
+         * A method added with the signature of one already in the table replaces it.
+         */
+        public Builder addMethod(String methodName, Type returnType, List<Symbol> parameters,
+                                 List<Symbol> variables) {
+            List<Symbol> internedParameters = Collections.unmodifiableList(interner.intern(parameters));
+            MethodSignature signature = new MethodSignature(interner, methodName, typesOf(internedParameters));
+            methods.remove(signature);
+            methods.put(signature, new MethodDefinition(signature, interner.intern(returnType), internedParameters,
+                    Collections.unmodifiableList(interner.intern(variables))));
+            return this;
+        }
+
+        /**
+         * Drops the entry of a method that was parsed again, and adds the one of the node that replaced it, leaving
+         * the other methods, including the other overloads, as they are.
+         */
+        public Builder replaceMethod(JmmNode oldMethod, JmmNode method) {
+            methods.remove(getSignature(interner, oldMethod));
+            new MyVisitor(this, "").visit(method, "");
+            return this;
+        }
+
+        public MySymbolTable build() {
+            return new MySymbolTable(this);
+        }
     }
 }
@@ -9,17 +9,25 @@ import pt.up.fe.comp.jmm.analysis.table.Type;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.BiFunction;
 
 public class MyVisitor extends AJmmVisitor<String, String> {
 
     private String className;
     private String current;
-    private final MySymbolTable table;
-    public MyVisitor(MySymbolTable symbolTable, String className) {
+    private final MySymbolTable.Builder table;
+    public MyVisitor(MySymbolTable.Builder symbolTable, String className) {
         this.className = className;
         this.table = symbolTable;
     }
 
+    private final VisitCache<String, String> visitCache = new VisitCache<>();
+
+    @Override
+    protected BiFunction<JmmNode, String, String> getVisit(JmmNode node) {
+        return visitCache.get(node, super::getVisit);
+    }
+
     protected void buildVisitor() {
         addVisit("Program", this::dealWithProgram);
         addVisit("ImportDeclaration", this::dealWithImport);
@@ -36,7 +44,7 @@ public class MyVisitor extends AJmmVisitor<String, String> {
     private String dealWithProgram(JmmNode jmmNode, String s) {
         s = (s!= null ?s:"");
 
-        for (JmmNode child : jmmNode.getChildren()){
+        for (JmmNode child : CompactJmmNode.childrenOf(jmmNode)){
             s += visit(child,"");
             s += ";\n";
         }
@@ -58,7 +66,7 @@ public class MyVisitor extends AJmmVisitor<String, String> {
             s += " extends " + jmmNode.get("superClass");
         }
         s += " {\n";
-        for (JmmNode child : jmmNode.getChildren()){
+        for (JmmNode child : CompactJmmNode.childrenOf(jmmNode)){
             s += "\t" + visit(child,"");
             s += ";\n";
         }
@@ -69,7 +77,7 @@ public class MyVisitor extends AJmmVisitor<String, String> {
     private String dealWithField(JmmNode jmmNode, String s) {
         Symbol sym = getSymbol(jmmNode);
         table.addField(sym);
-        for (JmmNode child : jmmNode.getChildren()){
+        for (JmmNode child : CompactJmmNode.childrenOf(jmmNode)){
             s += visit(child,"") + " ";
         }
         //s += jmmNode.get("name");
@@ -82,7 +90,7 @@ public class MyVisitor extends AJmmVisitor<String, String> {
         }
         switch (jmmNode.getKind()) {
             case "ArrayType" -> {
-                for (JmmNode child : jmmNode.getChildren()) {
+                for (JmmNode child : CompactJmmNode.childrenOf(jmmNode)) {
                     s += visit(child, "") + "[]";
                 }
                 return s;
@@ -119,32 +127,40 @@ public class MyVisitor extends AJmmVisitor<String, String> {
     }
 
     private String dealWithMethod(JmmNode jmmNode, String s) {
-        String methodName;
-        if (Objects.equals(jmmNode.getKind(), "MainMethod"))
-            methodName = "main";
-        else
-            methodName = jmmNode.get("methodName");
-
+        String methodName = getMethodName(jmmNode);
         Type returnType = getType(jmmNode.getJmmChild(0));
-        List<Symbol> parameters = new ArrayList<>();
         List<Symbol> variables = new ArrayList<>();
 
-        for (JmmNode child : jmmNode.getChildren()){
+        for (JmmNode child : CompactJmmNode.childrenOf(jmmNode)){
+            if (child.getKind().equals("Variable")){
+                variables.add(getSymbol(child));
+                s += visit(child.getJmmChild(0),"") + " ";
+            }
+        }
+
+        table.addMethod(methodName, returnType, getParameters(jmmNode), variables);
+        return s;
+    }
+
+    public static String getMethodName(JmmNode method) {
+        if (Objects.equals(method.getKind(), "MainMethod"))
+            return "main";
+        return method.get("methodName");
+    }
+
+    public static List<Symbol> getParameters(JmmNode method) {
+        List<Symbol> parameters = new ArrayList<>();
+        for (JmmNode child : CompactJmmNode.childrenOf(method)){
             if (child.getKind().equals("Parameter")){
                 var names = (List<String>) child.getObject("name");
                 int cnt = 0;
-                for (JmmNode grandchild : child.getChildren()){
+                for (JmmNode grandchild : CompactJmmNode.childrenOf(child)){
                     parameters.add(new Symbol(getType(grandchild), names.get(cnt)));
                     cnt++;
                 }
-            } else if (child.getKind().equals("Variable")){
-                variables.add(getSymbol(child));
-                s += visit(child.getJmmChild(0),"") + " ";
             }
         }
-
-        table.addMethod(methodName, returnType, parameters, variables);
-        return s;
+        return parameters;
     }
 
     public static Symbol getSymbol(JmmNode jmmNode) {
@@ -156,34 +172,36 @@ public class MyVisitor extends AJmmVisitor<String, String> {
     public static Type getType(JmmNode jmmNode) {
         switch (jmmNode.getKind()) {
             case "ArrayType" -> {
-                return new Type(getType(jmmNode.getJmmChild(0)).getName(), true);
+                Type elementType = getType(jmmNode.getJmmChild(0));
+                Type builtIn = Interner.getBuiltInType(elementType.getName(), true);
+                return builtIn != null ? builtIn : new Type(elementType.getName(), true);
             }
             case "BooleanType" -> {
-                return new Type("boolean", false);
+                return Interner.BOOLEAN;
             }
             case "IntegerType" -> {
-                return new Type("int", false);
+                return Interner.INT;
             }
             case "CharType" -> {
-                return new Type("char", false);
+                return Interner.CHAR;
             }
             case "DoubleType" -> {
-                return new Type("double", false);
+                return Interner.DOUBLE;
             }
             case "FloatType" -> {
-                return new Type("float", false);
+                return Interner.FLOAT;
             }
             case "ByteType" -> {
-                return new Type("byte", false);
+                return Interner.BYTE;
             }
             case "ShortType" -> {
-                return new Type("short", false);
+                return Interner.SHORT;
             }
             case "LongType" -> {
-                return new Type("long", false);
+                return Interner.LONG;
             }
             case "VoidType" -> {
-                return new Type("void", false);
+                return Interner.VOID;
             }
         }
         return new Type(jmmNode.get("name"), false);
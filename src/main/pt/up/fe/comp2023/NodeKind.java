@@ -0,0 +1,122 @@
+package pt.up.fe.comp2023;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The kinds of AST nodes produced by the Javamm grammar, with the rule each one belongs to and the attributes it can
+ * have.
+ *
+ * The attributes of a kind are stored in fixed slots of {@link CompactJmmNode}, in the order given here. Expression
+ * nodes also get slots for the "name", "type" and "isArray" attributes added by the semantic analysis.
+ */
+public enum NodeKind {
+    ENTIRE_PROGRAM("EntireProgram", "Program"),
+    IMPORT("Import", "ImportDeclaration", "ID", "value"),
+    CLASS("Class", "ClassDeclaration", "className", "superClass"),
+    VARIABLE("Variable", "VarDeclaration", "name"),
+    MAIN_METHOD("MainMethod", "MethodDeclaration", "methodName"),
+    GENERAL_METHOD("GeneralMethod", "MethodDeclaration", "methodName"),
+    PARAMETER("Parameter", "ParameterList", "type", "nameType", "ID", "name"),
+
+    ARRAY_TYPE("ArrayType", "Type"),
+    BOOLEAN_TYPE("BooleanType", "Type", "name"),
+    INTEGER_TYPE("IntegerType", "Type", "name"),
+    VOID_TYPE("VoidType", "Type", "name"),
+    ID_STRING_TYPE("IDStringType", "Type", "name"),
+
+    BLOCK_STATEMENT("BlockStatement", "Statement"),
+    IF_ELSE_STATEMENT("IfElseStatement", "Statement"),
+    IF_STATEMENT("IfStatement", "Statement"),
+    WHILE_STATEMENT("WhileStatement", "Statement"),
+    GENERAL_STATEMENT("GeneralStatement", "Statement"),
+    ASSIGNMENT("Assignment", "Statement", "var"),
+    ARRAY_DECLARATION("ArrayDeclaration", "Statement"),
+
+    UNARY_OP("UnaryOp", "Expression"),
+    BINARY_OP_COMPARE("BinaryOpCompare", "Expression", "op"),
+    BINARY_OP_LOGICAL("BinaryOpLogical", "Expression", "op"),
+    BINARY_OP_ARITHMETIC("BinaryOpArithmetic", "Expression", "op"),
+    ARRAY_ACCESS("ArrayAccess", "Expression"),
+    NEW_ARRAY_DECLARATION("NewArrayDeclaration", "Expression", "name"),
+    LENGTH("Length", "Expression"),
+    METHOD_CALL("MethodCall", "Expression", "methodName"),
+    GENERAL_DECLARATION("GeneralDeclaration", "Expression", "name"),
+    BRACKETS("Brackets", "Expression"),
+    INTEGER("Integer", "Expression", "name"),
+    BOOLEAN("Boolean", "Expression", "name"),
+    IDENTIFIER("Identifier", "Expression", "name"),
+    THIS("This", "Expression", "name");
+
+    private static final Map<String, NodeKind> BY_KIND = new HashMap<>();
+
+    static {
+        for (NodeKind kind : values()) {
+            BY_KIND.put(kind.kind, kind);
+        }
+    }
+
+    private final String kind;
+    private final List<String> hierarchy;
+    private final String[] slots;
+
+    NodeKind(String kind, String rule, String... labels) {
+        this.kind = kind;
+        this.hierarchy = List.of(kind, rule);
+
+        List<String> slots = new ArrayList<>(List.of(labels));
+        if (rule.equals("Expression")) {
+            // Static fields are not initialized yet while the constants are created
+            for (String attribute : new String[]{"name", "type", "isArray"}) {
+                if (!slots.contains(attribute)) {
+                    slots.add(attribute);
+                }
+            }
+        }
+        this.slots = slots.toArray(new String[0]);
+    }
+
+    /**
+     * @return the kind with the given name, or null if the grammar has no such kind
+     */
+    public static NodeKind fromKind(String kind) {
+        return BY_KIND.get(kind);
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the kind followed by the rule it belongs to, as in JmmNode.getHierarchy
+     */
+    public List<String> getHierarchy() {
+        return hierarchy;
+    }
+
+    public int getNumSlots() {
+        return slots.length;
+    }
+
+    public String getSlotName(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * @return the slot of the given attribute, or -1 if nodes of this kind keep it elsewhere
+     */
+    public int getSlot(String attribute) {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i].equals(attribute)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public List<String> getSlotNames() {
+        return List.of(slots);
+    }
+}
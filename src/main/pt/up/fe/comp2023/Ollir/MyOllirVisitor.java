@@ -5,9 +5,14 @@ import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
-import pt.up.fe.comp2023.MyAnalyserUtils;
+import pt.up.fe.comp2023.CompactJmmNode;
+import pt.up.fe.comp2023.Interner;
+import pt.up.fe.comp2023.MethodDefinition;
 import pt.up.fe.comp2023.MySymbolTable;
+import pt.up.fe.comp2023.MyVisitor;
+import pt.up.fe.comp2023.ScopedSymbol;
 import pt.up.fe.comp2023.Utils;
+import pt.up.fe.comp2023.VisitCache;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -29,6 +34,13 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
         this.ollirCode = new StringBuilder();
         this.symbolTable = symbolTable;
     }
+    private final VisitCache<String, String> visitCache = new VisitCache<>();
+
+    @Override
+    protected BiFunction<JmmNode, String, String> getVisit(JmmNode node) {
+        return visitCache.get(node, super::getVisit);
+    }
+
     @Override
     protected void buildVisitor() {
         addVisit("Program", this::dealWithProgram);
@@ -59,39 +71,65 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
         this.setDefaultVisit(this::defaultVisitor);
     }
 
-    private Type getTypeName(JmmNode jmmNode, String name){
-        String methodName = "";
-
-
+    private JmmNode getMethod(JmmNode jmmNode) {
         if (jmmNode.getAncestor("GeneralMethod").isPresent()){
-            methodName = jmmNode.getAncestor("GeneralMethod").get().get("methodName");
-        } else {
-            methodName = jmmNode.getAncestor("MainMethod").get().get("methodName");
+            return jmmNode.getAncestor("GeneralMethod").get();
         }
+        return jmmNode.getAncestor("MainMethod").get();
+    }
 
-        Type type = new Type(name, false);
-
-        for(Symbol variable: symbolTable.getLocalVariables(methodName)) {
-            if (Objects.equals(name, variable.getName())){
-                type = variable.getType();
+    // Locals hide parameters, which hide fields
+    private Optional<ScopedSymbol> resolve(JmmNode jmmNode, String name) {
+        JmmNode method = getMethod(jmmNode);
+        if (symbolTable instanceof MySymbolTable) {
+            return ((MySymbolTable) symbolTable).resolve(method, name);
+        }
+        String methodName = method.get("methodName");
+        for (Symbol variable : symbolTable.getLocalVariables(methodName)) {
+            if (Objects.equals(name, variable.getName())) {
+                return Optional.of(new ScopedSymbol(variable, ScopedSymbol.Kind.LOCAL, -1));
             }
         }
-
-        for(Symbol variable: symbolTable.getParameters(methodName)) {
-            if (Objects.equals(name, variable.getName())){
-                type = variable.getType();
+        List<Symbol> parameters = symbolTable.getParameters(methodName);
+        for (int i = 0; i < parameters.size(); i++) {
+            if (Objects.equals(name, parameters.get(i).getName())) {
+                return Optional.of(new ScopedSymbol(parameters.get(i), ScopedSymbol.Kind.PARAMETER, i));
             }
         }
-
-        for(Symbol variable: symbolTable.getFields()) {
-            if (Objects.equals(name, variable.getName())){
-                type = variable.getType();
+        for (Symbol variable : symbolTable.getFields()) {
+            if (Objects.equals(name, variable.getName())) {
+                return Optional.of(new ScopedSymbol(variable, ScopedSymbol.Kind.FIELD, -1));
             }
         }
-        return type;
+        return Optional.empty();
+    }
+
+    private Optional<MethodDefinition> getMethodDefinition(JmmNode method) {
+        if (symbolTable instanceof MySymbolTable) {
+            return ((MySymbolTable) symbolTable).getMethod(method);
+        }
+        return Optional.empty();
+    }
+
+    private Type getType(String name, boolean isArray) {
+        if (symbolTable instanceof MySymbolTable) {
+            return ((MySymbolTable) symbolTable).getInterner().getType(name, isArray);
+        }
+        return new Type(name, isArray);
+    }
+
+    private Type getTypeName(JmmNode jmmNode, String name){
+        return resolve(jmmNode, name).map(ScopedSymbol::getType).orElseGet(() -> getType(name, false));
+    }
+
+    private boolean isField(JmmNode jmmNode, String name) {
+        return resolve(jmmNode, name).map(ScopedSymbol::isField).orElse(false);
     }
 
     private Boolean isImport(String s){
+        if (symbolTable instanceof MySymbolTable) {
+            return ((MySymbolTable) symbolTable).isImported(s);
+        }
         boolean isImport = false;
         for (String imp : symbolTable.getImports()) {
             if (Objects.equals(s, imp)) {
@@ -102,32 +140,37 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
         return isImport;
     }
 
+    // Return type of a static call on an imported class, found by the analysis in the class files of the import
+    private Optional<Type> getImportedReturnType(JmmNode methodCall) {
+        JmmNode receiver = methodCall.getJmmChild(0);
+        if (!Objects.equals(receiver.getKind(), "Identifier") || !isImport(receiver.get("name"))
+                || !methodCall.hasAttribute("type")) {
+            return Optional.empty();
+        }
+        return Optional.of(getType(methodCall.get("type"), Boolean.parseBoolean(methodCall.get("isArray"))));
+    }
+
     private Boolean isVirtual(String s){
-        boolean isVirtual = false;
-        for (String imp : symbolTable.getMethods()) {
-            if (Objects.equals(s, imp)) {
-                isVirtual = true;
-                break;
-            }
+        if (symbolTable instanceof MySymbolTable) {
+            return ((MySymbolTable) symbolTable).hasMethod(s);
         }
-        return isVirtual;
+        return symbolTable.getMethods().contains(s);
     }
 
     private Boolean isSpecial(String s){
         return Objects.equals(s, symbolTable.getClassName());
     }
 
-    private int isParameter(String s, String methodName){
-        int isParameter = 0;
-        int cnt = 0;
-        for (Symbol imp : symbolTable.getParameters(methodName)) {
-            if (Objects.equals(s, imp.getName())) {
-                isParameter = cnt;
-                break;
-            }
-            cnt++;
+    // Index of the parameter a name refers to in its method, or 0 if it is not one, found through the method node so
+    // that overloads sharing the name are told apart
+    private int isParameter(JmmNode jmmNode){
+        if (jmmNode.getAncestor("GeneralMethod").isEmpty() && jmmNode.getAncestor("MainMethod").isEmpty()) {
+            return 0;
         }
-        return isParameter;
+        return resolve(jmmNode, jmmNode.get("name"))
+                .map(ScopedSymbol::getParameterIndex)
+                .filter(index -> index >= 0)
+                .orElse(0);
     }
 
     private String getNextTemp(Type type) {
@@ -197,7 +240,7 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
             ollirCode.append("import "+ importString + ";\n");
         }
 
-        for(JmmNode child: jmmNode.getChildren()) {
+        for(JmmNode child: CompactJmmNode.childrenOf(jmmNode)) {
             ollirCode.append(visit(child, ""));
         }
         //ollirCode += s;
@@ -227,7 +270,7 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
 
         boolean insertedConstructor = false;
 
-        for(JmmNode child: jmmNode.getChildren()) {
+        for(JmmNode child: CompactJmmNode.childrenOf(jmmNode)) {
             if (!child.getKind().equals("Variable")
                     && !insertedConstructor) {
                 ollirCode.append( "\t" + emptyConstructor());
@@ -247,7 +290,7 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
         if(!jmmNode.getJmmParent().getKind().equals("Class"))
             return "";
 
-        Symbol sym = MyAnalyserUtils.getSymbol(jmmNode);
+        Symbol sym = MyVisitor.getSymbol(jmmNode);
         ollirCode.append( "\t.field private " + sym.getName() + "." + OllirUtils.getCode(sym.getType()) + ";\n\n");
         return s;
     }
@@ -261,25 +304,30 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
 
         ollirCode.append( methodName + "(");
 
-        List<Symbol> parameters = symbolTable.getParameters(methodName);
+        // Overloads share the name, the entry of this one is found from its parameters
+        Optional<MethodDefinition> method = getMethodDefinition(jmmNode);
+        List<Symbol> parameters = method.map(MethodDefinition::getParameters)
+                .orElseGet(() -> symbolTable.getParameters(methodName));
+        Type returnType = method.map(MethodDefinition::getReturnType)
+                .orElseGet(() -> symbolTable.getReturnType(methodName));
 
         String parametersCode = parameters.stream()
                 .map(OllirUtils::getCode)
                 .collect(Collectors.joining(", "));
 
         ollirCode.append(parametersCode).append(").")
-                .append(OllirUtils.getCode(symbolTable.getReturnType(methodName)))
+                .append(OllirUtils.getCode(returnType))
                 .append(" {\n");
 
-        for(JmmNode child: jmmNode.getChildren()) {
+        for(JmmNode child: CompactJmmNode.childrenOf(jmmNode)) {
             if(child.getIndexOfSelf() == jmmNode.getNumChildren()-1){
                 if (child.getKind().equals("BinaryOpArithmetic") || child.getKind().equals("BinaryOpCompare") || child.getKind().equals("BinaryOpLogical") || child.getKind().equals("UnaryOp")){
-                    String expression = visit(child, symbolTable.getReturnType(methodName).getName());
-                    ollirCode.append( "\t\tret." + OllirUtils.getCode(symbolTable.getReturnType(methodName))
+                    String expression = visit(child, returnType.getName());
+                    ollirCode.append( "\t\tret." + OllirUtils.getCode(returnType)
                             + " " + expression);
                 }else{
-                    ollirCode.append( "\t\tret." + OllirUtils.getCode(symbolTable.getReturnType(methodName)) + " ");
-                    ollirCode.append( visit(child, symbolTable.getReturnType(methodName).getName()));
+                    ollirCode.append( "\t\tret." + OllirUtils.getCode(returnType) + " ");
+                    ollirCode.append( visit(child, returnType.getName()));
                 }
             }else
                 ollirCode.append( visit(child, ""));
@@ -301,15 +349,19 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
 
         ollirCode.append( methodName + "(");
 
-        List<Symbol> parameters = symbolTable.getParameters(methodName);
+        Optional<MethodDefinition> method = getMethodDefinition(jmmNode);
+        List<Symbol> parameters = method.map(MethodDefinition::getParameters)
+                .orElseGet(() -> symbolTable.getParameters(methodName));
+        Type returnType = method.map(MethodDefinition::getReturnType)
+                .orElseGet(() -> symbolTable.getReturnType(methodName));
 
         String parametersCode = parameters.stream()
                 .map(OllirUtils::getCode)
                 .collect(Collectors.joining(", "));
 
-        ollirCode.append( parametersCode + ")." + OllirUtils.getCode(symbolTable.getReturnType(methodName)) + " {\n");
+        ollirCode.append( parametersCode + ")." + OllirUtils.getCode(returnType) + " {\n");
 
-        for(JmmNode child: jmmNode.getChildren()) {
+        for(JmmNode child: CompactJmmNode.childrenOf(jmmNode)) {
             if(!Objects.equals(child.getKind(), "VoidType") && !Objects.equals(child.getKind(), "Parameter"))
                 ollirCode.append( visit(child, ""));
         }
@@ -319,23 +371,15 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
     }
 
     private String dealWithInteger(JmmNode jmmNode, String s) {
-        int num = 0;
-        if (jmmNode.getAncestor("GeneralMethod").isPresent() && isParameter(jmmNode.get("name"), jmmNode.getAncestor("GeneralMethod").get().get("methodName")) > 0){
-            num = isParameter(jmmNode.get("name"), jmmNode.getAncestor("GeneralMethod").get().get("methodName"));
-            return "$" + num + jmmNode.get("name") + ".i32";
-        }else if(jmmNode.getAncestor("MainMethod").isPresent() && isParameter(jmmNode.get("name"), jmmNode.getAncestor("MainMethod").get().get("methodName")) > 0){
-            num = isParameter(jmmNode.get("name"), jmmNode.getAncestor("GeneralMethod").get().get("methodName"));
+        int num = isParameter(jmmNode);
+        if (num > 0) {
             return "$" + num + jmmNode.get("name") + ".i32";
         }
         return jmmNode.get("name") + ".i32";
     }
     private String dealWithBoolean(JmmNode jmmNode, String s) {
-        int num = 0;
-        if (jmmNode.getAncestor("GeneralMethod").isPresent() && isParameter(jmmNode.get("name"), jmmNode.getAncestor("GeneralMethod").get().get("methodName")) > 0){
-            num = isParameter(jmmNode.get("name"), jmmNode.getAncestor("GeneralMethod").get().get("methodName"));
-            return "$" + num + jmmNode.get("name") + ".bool";
-        }else if(jmmNode.getAncestor("MainMethod").isPresent() && isParameter(jmmNode.get("name"), jmmNode.getAncestor("MainMethod").get().get("methodName")) > 0){
-            num = isParameter(jmmNode.get("name"), jmmNode.getAncestor("GeneralMethod").get().get("methodName"));
+        int num = isParameter(jmmNode);
+        if (num > 0) {
             return "$" + num + jmmNode.get("name") + ".bool";
         }
         return jmmNode.get("name") + ".bool";
@@ -344,7 +388,7 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
     private String dealWithIdentifier(JmmNode jmmNode, String s) {
 
         String ret = "";
-        if(OllirUtils.isField(jmmNode.get("name"), symbolTable)){
+        if(isField(jmmNode, jmmNode.get("name"))){
             Type type = getTypeName(jmmNode, jmmNode.get("name"));
 
             String temp =  getNextTemp(type);
@@ -375,7 +419,7 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
 
 
     private String dealWithGeneralStatement(JmmNode jmmNode, String s) {
-        for (JmmNode child : jmmNode.getChildren()){
+        for (JmmNode child : CompactJmmNode.childrenOf(jmmNode)){
             visit(child, "");
         }
         return s;
@@ -383,7 +427,7 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
 
     private String dealWithAssignment(JmmNode jmmNode, String s) {
 
-        if(OllirUtils.isField(jmmNode.get("var"), symbolTable)){
+        if(isField(jmmNode, jmmNode.get("var"))){
             Type type = getTypeName(jmmNode, jmmNode.get("var"));
             String lhs = " " + jmmNode.get("var") + ".";
             lhs += OllirUtils.getCode(type);
@@ -412,7 +456,7 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
 
         String arrVal = visit(jmmNode.getJmmChild(0), "");
         StringBuilder newIntArray = new StringBuilder();
-        Type arrayType = new Type("int", true);
+        Type arrayType = Interner.INT_ARRAY;
 
         newIntArray.append("new(array,")
                 .append(arrVal)
@@ -434,7 +478,7 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
     private String dealWithLength(JmmNode jmmNode, String typecode) {
         String arg1 = visit(jmmNode.getJmmChild(0), typecode);
 
-        Type type = new Type("int", false);
+        Type type = Interner.INT;
 
         String temp = getNextTemp(type);
         ollirCode.append("\t\t" + temp)
@@ -526,19 +570,26 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
         String temp = "";
         Type type;
         List<String> string_args = new ArrayList<>();
-        for (JmmNode child : jmmNode.getChildren()) {
+        for (JmmNode child : CompactJmmNode.childrenOf(jmmNode)) {
             if (child != jmmNode.getJmmChild(0)) {
                 string_args.add(visit(child, ""));
             }
         }
         if (Objects.equals(jmmNode.getJmmChild(0).getKind(), "This")) {
-            type = new Type(symbolTable.getClassName(), false);
+            type = getType(symbolTable.getClassName(), false);
         }else if (Objects.equals(jmmNode.getJmmChild(0).getKind(), "GeneralDeclaration")) {
             type = getTypeName(jmmNode, jmmNode.getJmmChild(0).get("name"));
             visit(jmmNode.getJmmChild(0));
         }else{
             type = getTypeName(jmmNode, jmmNode.getJmmChild(0).get("name"));
         }
+        Optional<Type> importedReturnType = getImportedReturnType(jmmNode);
+        if (importedReturnType.isPresent()) {
+            type = importedReturnType.get();
+        } else if (Objects.equals(jmmNode.getJmmChild(0).getKind(), "This") && jmmNode.hasAttribute("type")) {
+            // The analysis gives calls on this the return type of the overload they call
+            type = getType(jmmNode.get("type"), Boolean.parseBoolean(jmmNode.get("isArray")));
+        }
 
         if(jmmNode.getJmmParent().getKind().equals("Assignment") || jmmNode.getJmmParent().getKind().equals("MethodCall") || jmmNode.getJmmParent().getKind().equals("Brackets")) {
             temp = getNextTemp(type);
@@ -573,7 +624,8 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
         for (String arg : string_args) {
             ollirCode.append(", ").append(arg);
         }
-        if (Objects.equals(jmmNode.getJmmChild(0).getKind(), "This") || Objects.equals(jmmNode.getJmmChild(0).getKind(), "GeneralDeclaration")){
+        if (Objects.equals(jmmNode.getJmmChild(0).getKind(), "This") || Objects.equals(jmmNode.getJmmChild(0).getKind(), "GeneralDeclaration")
+                || importedReturnType.isPresent()){
             ollirCode.append(").")
                     .append(OllirUtils.getCode(type))
                     .append(";\n");
@@ -702,7 +754,7 @@ public class MyOllirVisitor extends AJmmVisitor<String, String> {
     }
 
     private String dealBlockStatement(JmmNode jmmNode, String typecode) {
-        for (JmmNode child: jmmNode.getChildren()) {
+        for (JmmNode child: CompactJmmNode.childrenOf(jmmNode)) {
             visit(child, typecode);
         }
         return typecode;
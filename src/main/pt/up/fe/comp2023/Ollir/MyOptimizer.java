@@ -3,19 +3,20 @@ package pt.up.fe.comp2023.Ollir;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.StageMetrics;
 
 import java.util.Collections;
 
 public class MyOptimizer implements JmmOptimization {
     @Override
     public JmmSemanticsResult optimize(JmmSemanticsResult semanticsResult) {
-        return JmmOptimization.super.optimize(semanticsResult);
+        return StageMetrics.measure("optimize", () -> JmmOptimization.super.optimize(semanticsResult));
     }
 
     @Override
     public OllirResult toOllir(JmmSemanticsResult jmmSemanticsResult) {
         MyOllirVisitor ollirVisitor = new MyOllirVisitor(jmmSemanticsResult.getSymbolTable());
-        ollirVisitor.visit(jmmSemanticsResult.getRootNode(), "");
+        StageMetrics.measure("ollir", () -> ollirVisitor.visit(jmmSemanticsResult.getRootNode(), ""));
         String ollirCode = ollirVisitor.getCode();
 
         return new OllirResult(jmmSemanticsResult, ollirCode, Collections.emptyList());
@@ -23,6 +24,6 @@ public class MyOptimizer implements JmmOptimization {
 
     @Override
     public OllirResult optimize(OllirResult ollirResult) {
-        return JmmOptimization.super.optimize(ollirResult);
+        return StageMetrics.measure("optimize", () -> JmmOptimization.super.optimize(ollirResult));
     }
 }
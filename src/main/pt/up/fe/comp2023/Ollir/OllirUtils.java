@@ -3,6 +3,7 @@ package pt.up.fe.comp2023.Ollir;
 import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp2023.MySymbolTable;
 
 public class OllirUtils {
 
@@ -58,6 +59,9 @@ public class OllirUtils {
     }
 
     public static Boolean isField(String var, SymbolTable symbolTable) {
+        if (symbolTable instanceof MySymbolTable) {
+            return ((MySymbolTable) symbolTable).isField(var);
+        }
         for (Symbol field: symbolTable.getFields()) {
             if(field.getName().equals(var))
                 return true;
@@ -0,0 +1,107 @@
+package pt.up.fe.comp2023;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Writes the generated code of each class to the output directory given by the option "outputDir", as
+ * "ClassName.ollir" and "ClassName.j".
+ *
+ * Code is encoded straight into a reusable direct buffer and written through a FileChannel, so large outputs are
+ * never copied into an intermediate byte array.
+ */
+public class OutputWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Writers are reused by the batch workers, one buffer per thread
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private final Path outputDir;
+
+    public OutputWriter(Path outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    public static Optional<OutputWriter> fromConfig(Map<String, String> config) {
+        return Optional.ofNullable(config.get("outputDir")).map(dir -> new OutputWriter(Paths.get(dir)));
+    }
+
+    /**
+     * Returns true if the option "quiet" is set, in which case no ASTs or code should be printed to the console.
+     */
+    public static boolean isQuiet(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault("quiet", "false"));
+    }
+
+    /**
+     * Writes the OLLIR and Jasmin code of the given output, if they exist.
+     *
+     * @return the files that were written
+     */
+    public List<Path> write(CompilationOutput output) {
+        List<Path> written = new ArrayList<>();
+        if (output.getClassName() == null) {
+            return written;
+        }
+
+        if (output.getOllirCode() != null) {
+            written.add(write(output.getClassName() + ".ollir", output.getOllirCode()));
+        }
+        if (output.getJasminCode() != null) {
+            written.add(write(output.getClassName() + ".j", output.getJasminCode()));
+        }
+        return written;
+    }
+
+    public Path write(String fileName, CharSequence content) {
+        Path file = outputDir.resolve(fileName);
+        try {
+            Files.createDirectories(outputDir);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+                CharBuffer chars = CharBuffer.wrap(content);
+                ByteBuffer buffer = BUFFERS.get();
+                buffer.clear();
+
+                CoderResult result;
+                do {
+                    result = encoder.encode(chars, buffer, true);
+                    if (result.isError()) {
+                        result.throwException();
+                    }
+                    drain(buffer, channel);
+                } while (result.isOverflow());
+
+                encoder.flush(buffer);
+                drain(buffer, channel);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write output file " + file, e);
+        }
+        return file;
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,196 @@
+package pt.up.fe.comp2023;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.antlr.ThrowingErrorListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Parses large files by splitting them at method boundaries and parsing the methods in parallel.
+ *
+ * A first pass over the tokens finds the methods of each class by matching braces. Every method is then parsed on its
+ * own with the methodDeclaration rule, as fork-join tasks, while the rest of the file is parsed with the methods
+ * blanked out, keeping the line breaks so that all positions stay the same. The method nodes are finally added to their
+ * class nodes, in the order they appear in.
+ *
+ * Enabled with the option "parallelParse", or by default for inputs of at least {@link #MIN_SIZE} characters when there
+ * is more than one processor.
+ */
+public class ParallelParser {
+
+    static final int MIN_SIZE = 256 * 1024;
+
+    // Below this, splitting costs more than it saves
+    private static final int MIN_METHODS = 16;
+
+    public static boolean isEnabled(CharStream input, Map<String, String> config) {
+        String option = config.get("parallelParse");
+        if (option != null) {
+            return Boolean.parseBoolean(option);
+        }
+        return input.size() >= MIN_SIZE && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * @return the root node, or empty if the file could not be split or any part did not parse, in which case it must
+     * be parsed as a whole, which also reports the errors
+     */
+    public static Optional<JmmNode> parse(CharStream input) {
+        List<Method> methods = findMethods(input);
+        if (methods == null || methods.size() < MIN_METHODS) {
+            return Optional.empty();
+        }
+
+        List<Optional<JmmNode>> methodNodes = methods.parallelStream()
+                .map(StageMetrics.onWorkers("parse", method -> parseMethod(input, method)))
+                .collect(Collectors.toList());
+
+        Optional<JmmNode> root = SimpleParser.parseSll(new ANTLRInputStream(blankMethods(input, methods)), "program");
+        if (root.isEmpty()) {
+            return Optional.empty();
+        }
+
+        List<JmmNode> classes = CompactJmmNode.childrenOf(root.get()).stream()
+                .filter(child -> child.getKind().equals("Class"))
+                .collect(Collectors.toList());
+        for (int i = 0; i < methods.size(); i++) {
+            int classIndex = methods.get(i).classIndex;
+            if (methodNodes.get(i).isEmpty() || classIndex >= classes.size()) {
+                return Optional.empty();
+            }
+            classes.get(classIndex).add(methodNodes.get(i).get());
+        }
+        return root;
+    }
+
+    /**
+     * Finds the methods of every class: the members whose body starts with a brace.
+     *
+     * @return the methods in the order they appear in, or null if the file cannot be split safely
+     */
+    private static List<Method> findMethods(CharStream input) {
+        input.seek(0);
+        JavammLexer lexer = new JavammLexer(input);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(new ThrowingErrorListener());
+
+        List<? extends Token> tokens;
+        try {
+            tokens = lexer.getAllTokens();
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        List<Method> methods = new ArrayList<>();
+        int classIndex = -1;
+        int depth = 0;
+        boolean classHeader = false;
+        boolean inClass = false;
+        Token memberStart = null;
+        boolean inMethod = false;
+        boolean sawMethod = false;
+
+        for (Token token : tokens) {
+            String text = token.getText();
+            if (depth == 0 && text.equals("class")) {
+                classIndex++;
+                classHeader = true;
+                sawMethod = false;
+            }
+            // Blocks of statements outside classes have no members
+            if (inClass && depth == 1 && memberStart == null && !text.equals("}")) {
+                memberStart = token;
+            }
+
+            switch (text) {
+                case "{" -> {
+                    if (depth == 0) {
+                        inClass = classHeader;
+                        classHeader = false;
+                    }
+                    depth++;
+                    if (depth == 2 && memberStart != null) {
+                        inMethod = true;
+                    }
+                }
+                case "}" -> {
+                    depth--;
+                    if (depth < 0) {
+                        return null;
+                    }
+                    if (depth == 1 && inMethod) {
+                        methods.add(new Method(memberStart, token, classIndex));
+                        memberStart = null;
+                        inMethod = false;
+                        sawMethod = true;
+                    } else if (depth == 0) {
+                        if (memberStart != null) {
+                            // The class ended in the middle of a member
+                            return null;
+                        }
+                        inClass = false;
+                    }
+                }
+                case ";" -> {
+                    if (depth == 1 && memberStart != null) {
+                        // Fields after a method are a syntax error, which only the whole parse reports
+                        if (sawMethod) {
+                            return null;
+                        }
+                        memberStart = null;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        return depth == 0 && classIndex >= 0 ? methods : null;
+    }
+
+    private static Optional<JmmNode> parseMethod(CharStream input, Method method) {
+        String code = input.getText(Interval.of(method.start.getStartIndex(), method.stop.getStopIndex()));
+        Optional<JmmNode> node = SimpleParser.parseMethod(code);
+        if (node.isEmpty() || !(node.get() instanceof CompactJmmNode)) {
+            return Optional.empty();
+        }
+
+        // Parsed on its own, move it to where it starts in the file
+        SimpleParser.shiftPositions((CompactJmmNode) node.get(), method.start.getLine() - 1,
+                method.start.getCharPositionInLine());
+        return node;
+    }
+
+    // Replaces the methods by spaces, keeping the line breaks
+    private static String blankMethods(CharStream input, List<Method> methods) {
+        char[] code = input.getText(Interval.of(0, input.size() - 1)).toCharArray();
+        for (Method method : methods) {
+            for (int i = method.start.getStartIndex(); i <= method.stop.getStopIndex(); i++) {
+                if (code[i] != '\n') {
+                    code[i] = ' ';
+                }
+            }
+        }
+        return new String(code);
+    }
+
+    private static class Method {
+        private final Token start;
+        private final Token stop;
+        private final int classIndex;
+
+        private Method(Token start, Token stop, int classIndex) {
+            this.start = start;
+            this.stop = stop;
+            this.classIndex = classIndex;
+        }
+    }
+}
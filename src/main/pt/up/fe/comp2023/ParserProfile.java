@@ -0,0 +1,218 @@
+package pt.up.fe.comp2023;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.BasicBlockStartState;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.runtime.atn.PlusBlockStartState;
+import org.antlr.v4.runtime.atn.PlusLoopbackState;
+import org.antlr.v4.runtime.atn.ProfilingATNSimulator;
+import org.antlr.v4.runtime.atn.StarBlockStartState;
+import org.antlr.v4.runtime.atn.StarLoopEntryState;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Profiles the prediction decisions of JavammParser, enabled with the option "profileParser".
+ *
+ * Inputs are then parsed by a {@link ProfilingParser}, which runs ANTLR's ProfilingATNSimulator with the default LL
+ * prediction and remembers which alternative label each predicted alternative led to. The statistics of every parse
+ * are added up, and {@link #print()} lists the decisions with their rule, the labels of their alternatives,
+ * invocations, lookahead depths, full-context fallbacks and ambiguities.
+ */
+public class ParserProfile {
+
+    private static final Map<Integer, DecisionStats> STATS = new ConcurrentHashMap<>();
+    private static final Map<Integer, SortedMap<Integer, String>> LABELS = new ConcurrentHashMap<>();
+
+    public static boolean isEnabled(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault("profileParser", "false"));
+    }
+
+    /**
+     * Adds the statistics of a parse that just finished.
+     */
+    static void record(ProfilingParser parser) {
+        for (DecisionInfo info : ((ProfilingATNSimulator) parser.getInterpreter()).getDecisionInfo()) {
+            if (info.invocations > 0) {
+                STATS.computeIfAbsent(info.decision, DecisionStats::new).add(info);
+            }
+        }
+    }
+
+    /**
+     * Clears the statistics collected so far.
+     */
+    public static void reset() {
+        STATS.clear();
+    }
+
+    /**
+     * @return one line per decision that was used, the ones that took the longest first
+     */
+    public static String print() {
+        ATN atn = JavammParser._ATN;
+        List<DecisionStats> decisions = new ArrayList<>(STATS.values());
+        decisions.sort(Comparator.comparingLong((DecisionStats stats) -> stats.timeInPrediction).reversed());
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-8s %-24s %-12s %10s %9s %8s %7s %8s %7s %6s %6s  %s%n", "decision", "rule",
+                "kind", "invocations", "time ms", "SLL avg", "SLL max", "LL fallb", "LL max", "ambig", "ctxsen",
+                "alternatives"));
+
+        for (DecisionStats stats : decisions) {
+            DecisionState state = atn.getDecisionState(stats.decision);
+            String rule = JavammParser.ruleNames[state.ruleIndex];
+            report.append(String.format("%-8d %-24s %-12s %10d %9.2f %8.2f %7d %8d %7d %6d %6d  %s%n",
+                    stats.decision, rule, describe(atn, state), stats.invocations,
+                    stats.timeInPrediction / 1_000_000.0, (double) stats.sllTotalLook / stats.invocations,
+                    stats.sllMaxLook, stats.llFallbacks, stats.llMaxLook, stats.ambiguities,
+                    stats.contextSensitivities, describeAlternatives(stats.decision)));
+        }
+        return report.toString();
+    }
+
+    private static String describe(ATN atn, DecisionState state) {
+        if (state instanceof StarLoopEntryState) {
+            return ((StarLoopEntryState) state).isPrecedenceDecision ? "operators" : "(...)*";
+        }
+        if (state instanceof StarBlockStartState) {
+            return "(...)* body";
+        }
+        if (state instanceof PlusLoopbackState) {
+            return "(...)+";
+        }
+        if (state instanceof PlusBlockStartState) {
+            return "(...)+ body";
+        }
+        if (state instanceof BasicBlockStartState) {
+            // The block right at the start of the rule holds its labelled alternatives
+            boolean outer = atn.ruleToStartState[state.ruleIndex].transition(0).target == state;
+            return outer ? "rule alts" : "(...)";
+        }
+        return state.getClass().getSimpleName();
+    }
+
+    private static String describeAlternatives(int decision) {
+        SortedMap<Integer, String> labels = LABELS.get(decision);
+        if (labels == null) {
+            return "";
+        }
+
+        List<String> alternatives = new ArrayList<>();
+        labels.forEach((alt, label) -> alternatives.add(alt + "=#" + label));
+        return String.join(" ", alternatives);
+    }
+
+    private static class DecisionStats {
+        private final int decision;
+        private long invocations;
+        private long timeInPrediction;
+        private long sllTotalLook;
+        private long sllMaxLook;
+        private long llFallbacks;
+        private long llMaxLook;
+        private long ambiguities;
+        private long contextSensitivities;
+
+        private DecisionStats(int decision) {
+            this.decision = decision;
+        }
+
+        private synchronized void add(DecisionInfo info) {
+            invocations += info.invocations;
+            timeInPrediction += info.timeInPrediction;
+            sllTotalLook += info.SLL_TotalLook;
+            sllMaxLook = Math.max(sllMaxLook, info.SLL_MaxLook);
+            llFallbacks += info.LL_Fallback;
+            llMaxLook = Math.max(llMaxLook, info.LL_MaxLook);
+            ambiguities += info.ambiguities.size();
+            contextSensitivities += info.contextSensitivities.size();
+        }
+    }
+
+    /**
+     * JavammParser that profiles its decisions and maps the predicted alternatives to the labels of the contexts they
+     * create.
+     *
+     * The generated code creates the labelled context right after predicting the alternative: before enterOuterAlt in
+     * most rules, before pushNewRecursionContext for the operators of left-recursive rules, and before the first token
+     * is consumed for their primary alternatives. The last prediction is forgotten whenever a rule is entered, so a
+     * prediction of the calling rule is never taken for one of the called rule.
+     */
+    static class ProfilingParser extends JavammParser {
+        private int lastDecision = -1;
+        private int lastAlt = -1;
+        private boolean labelOnConsume = false;
+
+        ProfilingParser(TokenStream input) {
+            super(input);
+            setInterpreter(new ProfilingATNSimulator(this) {
+                @Override
+                public int adaptivePredict(TokenStream input, int decision, ParserRuleContext outerContext) {
+                    int alt = super.adaptivePredict(input, decision, outerContext);
+                    lastDecision = decision;
+                    lastAlt = alt;
+                    return alt;
+                }
+            });
+        }
+
+        @Override
+        public void enterRule(ParserRuleContext localctx, int state, int ruleIndex) {
+            lastDecision = -1;
+            labelOnConsume = false;
+            super.enterRule(localctx, state, ruleIndex);
+        }
+
+        @Override
+        public void enterRecursionRule(ParserRuleContext localctx, int state, int ruleIndex, int precedence) {
+            lastDecision = -1;
+            labelOnConsume = true;
+            super.enterRecursionRule(localctx, state, ruleIndex, precedence);
+        }
+
+        @Override
+        public void enterOuterAlt(ParserRuleContext localctx, int altNum) {
+            if (lastAlt == altNum) {
+                recordLabel(localctx);
+            }
+            super.enterOuterAlt(localctx, altNum);
+        }
+
+        @Override
+        public void pushNewRecursionContext(ParserRuleContext localctx, int state, int ruleIndex) {
+            recordLabel(localctx);
+            super.pushNewRecursionContext(localctx, state, ruleIndex);
+        }
+
+        @Override
+        public Token consume() {
+            if (labelOnConsume) {
+                recordLabel(getContext());
+                labelOnConsume = false;
+            }
+            return super.consume();
+        }
+
+        private void recordLabel(ParserRuleContext context) {
+            if (lastDecision == -1 || getATN().getDecisionState(lastDecision).ruleIndex != context.getRuleIndex()) {
+                return;
+            }
+
+            String label = context.getClass().getSimpleName();
+            label = label.substring(0, label.length() - "Context".length());
+            LABELS.computeIfAbsent(lastDecision, decision -> new ConcurrentSkipListMap<>()).put(lastAlt, label);
+            lastDecision = -1;
+        }
+    }
+}
@@ -19,7 +19,10 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
     static final List<String> LOGICAL_OP = List.of("&&");
 
 
-    public ReferenceVisitor() {
+    private final MyAnalyserUtils analyserUtils;
+
+    public ReferenceVisitor(MySymbolTable symbolTable) {
+        this.analyserUtils = new MyAnalyserUtils(symbolTable);
     }
     @Override
     protected void buildVisitor() {
@@ -174,7 +177,7 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
             return reports;
         }
 
-        Type operand = MyAnalyserUtils.getType(jmmNode.getJmmChild(0));
+        Type operand = analyserUtils.getType(jmmNode.getJmmChild(0));
         if (PRIMITIVES.contains(operand.getName())) {
             putUnknownType(jmmNode);
             reports.add(MyReportUtils.cannotBeDereferencedReport(jmmNode, operand.getName()));
@@ -246,8 +249,8 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
     private String inferMethodSignature(JmmNode jmmNode) {
         StringBuilder methodSignatureBuilder = new StringBuilder();
         methodSignatureBuilder.append(jmmNode.get("methodname"));
-        for (JmmNode argument: jmmNode.getJmmChild(1).getChildren()) {
-            Type argType = MyAnalyserUtils.getType(argument);
+        for (JmmNode argument: CompactJmmNode.childrenOf(jmmNode.getJmmChild(1))) {
+            Type argType = analyserUtils.getType(argument);
             methodSignatureBuilder.append("#");
             methodSignatureBuilder.append(argType.print());
         }
@@ -257,7 +260,7 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
     private List<Report> visitLengthCall(JmmNode jmmNode, SymbolTable symbolTable) {
         List<Report> reports = new ArrayList<>();
 
-        Type type = MyAnalyserUtils.getType(jmmNode.getJmmChild(0));
+        Type type = analyserUtils.getType(jmmNode.getJmmChild(0));
         if (!type.getName().equals("#UNKNOWN") && !type.isArray()) {
             reports.add(MyReportUtils.arrayRequiredReport(jmmNode, type.print()));
         }
@@ -270,8 +273,8 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
     private List<Report> visitIndexing(JmmNode jmmNode, SymbolTable symbolTable) {
         List<Report> reports = new ArrayList<>();
 
-        Type operandType = MyAnalyserUtils.getType(jmmNode.getJmmChild(0));
-        Type indexType = MyAnalyserUtils.getType(jmmNode.getJmmChild(1));
+        Type operandType = analyserUtils.getType(jmmNode.getJmmChild(0));
+        Type indexType = analyserUtils.getType(jmmNode.getJmmChild(1));
 
         if (!indexType.getName().equals("#UNKNOWN") && (!indexType.getName().equals("int") || indexType.isArray())) {
             reports.add(MyReportUtils.incompatibleTypesReport(jmmNode.getJmmChild(1), indexType.print(), "int"));
@@ -292,7 +295,7 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
     private List<Report> visitNewObject(JmmNode jmmNode, SymbolTable symbolTable) {
         List<Report> reports = new ArrayList<>();
 
-        Type objType = MyAnalyserUtils.getType(jmmNode);
+        Type objType = analyserUtils.getType(jmmNode);
         if (objType.isArray() || PRIMITIVES.contains(objType.getName())) {
             putUnknownType(jmmNode);
             reports.add(MyReportUtils.operatorCannotBeAppliedReport(jmmNode, "new", objType.print()));
@@ -305,7 +308,7 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
     private List<Report> visitNewIntArray(JmmNode jmmNode, SymbolTable symbolTable) {
         List<Report> reports = new ArrayList<>();
 
-        Type type = MyAnalyserUtils.getType(jmmNode.getJmmChild(0));
+        Type type = analyserUtils.getType(jmmNode.getJmmChild(0));
         if (!type.getName().equals("#UNKNOWN") && !(type.getName().equals("int") && !type.isArray())) {
             reports.add(MyReportUtils.incompatibleTypesReport(jmmNode, type.print(), "int"));
         }
@@ -317,7 +320,7 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
 
     private List<Report> visitNot(JmmNode jmmNode, SymbolTable symbolTable) {
         List<Report> reports = new ArrayList<>();
-        Type type = MyAnalyserUtils.getType(jmmNode.getJmmChild(0));
+        Type type = analyserUtils.getType(jmmNode.getJmmChild(0));
 
         if (type.getName().equals("#UKNOWN")) {
             putUnknownType(jmmNode);
@@ -337,8 +340,8 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
 
     private List<Report> visitBinaryOp(JmmNode jmmNode, SymbolTable symbolTable) {
         List<Report> reports = new ArrayList<>();
-        Type lhsType = MyAnalyserUtils.getType(jmmNode.getJmmChild(0));
-        Type rhsType = MyAnalyserUtils.getType(jmmNode.getJmmChild(1));
+        Type lhsType = analyserUtils.getType(jmmNode.getJmmChild(0));
+        Type rhsType = analyserUtils.getType(jmmNode.getJmmChild(1));
 
         if (lhsType.getName().equals("#UNKNOWN") || rhsType.getName().equals("#UNKNOWN")) {
             putUnknownType(jmmNode);
@@ -392,8 +395,8 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
 
     private List<Report> visitAssignment(JmmNode jmmNode, SymbolTable symbolTable) {
         List<Report> reports = new ArrayList<>();
-        Type lhsType = MyAnalyserUtils.getType(jmmNode.getJmmChild(0));
-        Type rhsType = MyAnalyserUtils.getType(jmmNode.getJmmChild(1));
+        Type lhsType = analyserUtils.getType(jmmNode.getJmmChild(0));
+        Type rhsType = analyserUtils.getType(jmmNode.getJmmChild(1));
 
         if (lhsType.getName().equals("#UNKNOWN")) {
             return reports;
@@ -412,7 +415,7 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
 
     private List<Report> visitCondition(JmmNode jmmNode, SymbolTable symbolTable) {
         List<Report> reports = new ArrayList<>();
-        Type conditionType = MyAnalyserUtils.getType(jmmNode.getJmmChild(0));
+        Type conditionType = analyserUtils.getType(jmmNode.getJmmChild(0));
 
         if (conditionType.getName().equals("#UNKNOWN")) {
             return reports;
@@ -429,7 +432,7 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
         List<Report> reports = new ArrayList<>();
         String methodSignature = jmmNode.getJmmParent().getJmmParent().get("signature");
         Type returnType = symbolTable.getReturnType(methodSignature);
-        Type expressionType = MyAnalyserUtils.getType(jmmNode.getJmmChild(0));
+        Type expressionType = analyserUtils.getType(jmmNode.getJmmChild(0));
 
         if (returnType.getName().equals("#UNKNOWN") || expressionType.getName().equals("#UNKNOWN")) {
             return reports;
@@ -445,7 +448,7 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
     private List<Report> visitType(JmmNode jmmNode, SymbolTable symbolTable) {
         List<Report> reports = new ArrayList<>();
 
-        Type objType = MyAnalyserUtils.getType(jmmNode);
+        Type objType = analyserUtils.getType(jmmNode);
         if (PRIMITIVES.contains(objType.getName())) {
             return reports;
         }
@@ -456,7 +459,7 @@ public class ReferenceVisitor extends PostorderJmmVisitor<SymbolTable, List<Repo
     private List<Report> checkTypeImport(JmmNode jmmNode, SymbolTable symbolTable) {
         List<Report> reports = new ArrayList<>();
 
-        Type objType = MyAnalyserUtils.getType(jmmNode);
+        Type objType = analyserUtils.getType(jmmNode);
 
         if (symbolTable.getClassName().equals(objType.getName()) || objType.getName().equals("String")) {
             return reports;
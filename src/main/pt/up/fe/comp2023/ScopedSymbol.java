@@ -0,0 +1,48 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+
+/**
+ * A name as seen from inside a method: the symbol it refers to, whether it is a local variable, a parameter or a
+ * field, and for parameters, their index in the method signature.
+ */
+public class ScopedSymbol {
+
+    public enum Kind {
+        LOCAL, PARAMETER, FIELD
+    }
+
+    private final Symbol symbol;
+    private final Kind kind;
+    private final int parameterIndex;
+
+    public ScopedSymbol(Symbol symbol, Kind kind, int parameterIndex) {
+        this.symbol = symbol;
+        this.kind = kind;
+        this.parameterIndex = parameterIndex;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public Type getType() {
+        return symbol.getType();
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the index of the parameter, or -1 if the symbol is not a parameter
+     */
+    public int getParameterIndex() {
+        return parameterIndex;
+    }
+
+    public boolean isField() {
+        return kind == Kind.FIELD;
+    }
+}
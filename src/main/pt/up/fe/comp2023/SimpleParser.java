@@ -1,19 +1,41 @@
 package pt.up.fe.comp2023;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
+import pt.up.fe.comp.jmm.ast.antlr.JmmNodeCleanup;
 import pt.up.fe.comp.jmm.ast.antlr.ThrowingErrorListener;
 import pt.up.fe.comp.jmm.parser.JmmParser;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.ReportType;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.specs.util.SpecsSystem;
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Copyright 2022 SPeCS.
@@ -30,6 +52,13 @@ import java.util.Map;
 
 public class SimpleParser implements JmmParser {
 
+    private static final AtomicLong SLL_PARSES = new AtomicLong();
+    private static final AtomicLong LL_FALLBACKS = new AtomicLong();
+
+    // Each thread reuses one lexer and parser, resetting them for every input. The prediction DFA lives in static
+    // fields of JavammParser, so whatever one thread learns is used by all the others.
+    private static final ThreadLocal<ParserInstances> INSTANCES = ThreadLocal.withInitial(ParserInstances::new);
+
     @Override
     public String getDefaultRule() {
         return "program";
@@ -37,28 +66,393 @@ public class SimpleParser implements JmmParser {
 
     @Override
     public JmmParserResult parse(String jmmCode, String startingRule, Map<String, String> config) {
+        // Convert code string into a character stream
+        return StageMetrics.measure("parse", () -> parseCode(new ANTLRInputStream(jmmCode), startingRule, config));
+    }
+
+    /**
+     * Parses a source file, lexing its bytes without reading them into a String first.
+     */
+    public JmmParserResult parse(Path file, String startingRule, Map<String, String> config) {
+        return StageMetrics.measure("parse", () -> {
+            CharStream input;
+            try {
+                input = MappedCharStream.open(file);
+            } catch (RuntimeException e) {
+                return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, e.getMessage(), e));
+            }
+            return parseCode(input, startingRule, config);
+        });
+    }
+
+    public JmmParserResult parse(Path file, Map<String, String> config) {
+        return parse(file, getDefaultRule(), config);
+    }
+
+    /**
+     * Parses the code again after an edit. If the edit is inside a single method, only that method is parsed again
+     * and spliced into the previous tree, otherwise the whole new code is parsed.
+     *
+     * @param previous the result of parsing previousCode, whose tree may be changed in place
+     */
+    public JmmParserResult reparse(JmmParserResult previous, String previousCode, TextEdit edit,
+                                   Map<String, String> config) {
+        if (reparseMethod(previous, previousCode, edit, null).isPresent()) {
+            return new JmmParserResult(previous.getRootNode(), Collections.emptyList(), config);
+        }
+        return parse(edit.apply(previousCode), config);
+    }
+
+    /**
+     * Parses again the method that contains the edit, and replaces the old method node in the previous tree with the
+     * new one. The positions of the nodes after the method are moved by the lines and columns the edit added.
+     *
+     * Nothing is changed if the edit touches the first or last character of a method, or anything outside methods,
+     * or if the new method text is not exactly one method. The whole code must then be parsed again.
+     *
+     * @param previous the result of parsing previousCode, with a tree built by this parser
+     * @param table a builder of the symbol table of the previous tree, from {@link MySymbolTable#toBuilder()}, whose
+     *              entry for the method is replaced, or null
+     * @return the new method node, or empty if the edit could not be applied to a single method
+     */
+    public Optional<JmmNode> reparseMethod(JmmParserResult previous, String previousCode, TextEdit edit,
+                                           MySymbolTable.Builder table) {
+        if (!(previous.getRootNode() instanceof CompactJmmNode)) {
+            return Optional.empty();
+        }
+
+        int[] lineOffsets = getLineOffsets(previousCode);
+        CompactJmmNode method = findMethod(previous.getRootNode(), lineOffsets, edit);
+        if (method == null) {
+            return Optional.empty();
+        }
+
+        int start = getOffset(lineOffsets, method.getLineStart(), method.getColStart());
+        int end = getOffset(lineOffsets, method.getLineEnd(), method.getColEnd()) + 1;
+        String methodCode = previousCode.substring(start, edit.getOffset()) + edit.getText()
+                + previousCode.substring(edit.getEnd(), end);
+
+        Optional<JmmNode> parsed = StageMetrics.measure("parse", () -> parseMethod(methodCode));
+        if (parsed.isEmpty() || !(parsed.get() instanceof CompactJmmNode)) {
+            return Optional.empty();
+        }
+
+        // The new method was parsed on its own, move it to where it starts in the file
+        CompactJmmNode newMethod = (CompactJmmNode) parsed.get();
+        shiftPositions(newMethod, method.getLineStart() - 1, method.getColStart());
+
+        // Everything after the old method moves by as much as its end did
+        int lineDelta = newMethod.getLineEnd() - method.getLineEnd();
+        int colDelta = newMethod.getColEnd() - method.getColEnd();
+        shiftPositionsAfter((CompactJmmNode) previous.getRootNode(), method, lineDelta, colDelta);
+
+        JmmNode parent = method.getJmmParent();
+        parent.setChild(newMethod, CompactJmmNode.childrenOf(parent).indexOf(method));
+
+        if (table != null) {
+            table.replaceMethod(method, newMethod);
+        }
+        return Optional.of(newMethod);
+    }
+
+    private static CompactJmmNode findMethod(JmmNode root, int[] lineOffsets, TextEdit edit) {
+        for (JmmNode classNode : CompactJmmNode.childrenOf(root)) {
+            for (JmmNode node : CompactJmmNode.childrenOf(classNode)) {
+                if (!(node instanceof CompactJmmNode) || !node.getHierarchy().contains("MethodDeclaration")) {
+                    continue;
+                }
+
+                CompactJmmNode method = (CompactJmmNode) node;
+                int start = getOffset(lineOffsets, method.getLineStart(), method.getColStart());
+                int end = getOffset(lineOffsets, method.getLineEnd(), method.getColEnd()) + 1;
+                if (start < edit.getOffset() && edit.getEnd() < end) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
 
+    /**
+     * Parses the code of a single method, with SLL only: on any failure the caller parses the whole file, which also
+     * reports the errors.
+     */
+    static Optional<JmmNode> parseMethod(String methodCode) {
+        ParserInstances instances = INSTANCES.get();
         try {
-            // Convert code string into a character stream
-            var input = new ANTLRInputStream(jmmCode);
-            // Transform characters into tokens using the lexer
-            var lex = new pt.up.fe.comp2023.JavammLexer(input);
-            // Wrap lexer around a token stream
-            var tokens = new CommonTokenStream(lex);
-            // Transforms tokens into a parse tree
-            var parser = new pt.up.fe.comp2023.JavammParser(tokens);
+            // The rule does not end with EOF, tokens left over mean the code was not just one method
+            return parseSll(new ANTLRInputStream(methodCode), "methodDeclaration")
+                    .filter(method -> instances.parser.getInputStream().LA(1) == Token.EOF);
+        } finally {
+            instances.release();
+        }
+    }
+
+    // Offsets of the first character of each line, lines are counted from 1 as in the node positions
+    private static int[] getLineOffsets(String code) {
+        List<Integer> offsets = new ArrayList<>();
+        offsets.add(0);
+        offsets.add(0);
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) == '\n') {
+                offsets.add(i + 1);
+            }
+        }
+        return offsets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int getOffset(int[] lineOffsets, int line, int col) {
+        return lineOffsets[line] + col;
+    }
+
+    // Moves a tree parsed on its own: every line by lineDelta, and the columns in its first line by colDelta
+    static void shiftPositions(CompactJmmNode node, int lineDelta, int colDelta) {
+        node.setPosition(
+                node.getLineStart() + lineDelta,
+                node.getLineStart() == 1 ? node.getColStart() + colDelta : node.getColStart(),
+                node.getLineEnd() + lineDelta,
+                node.getLineEnd() == 1 ? node.getColEnd() + colDelta : node.getColEnd());
+        for (JmmNode child : CompactJmmNode.childrenOf(node)) {
+            if (child instanceof CompactJmmNode) {
+                shiftPositions((CompactJmmNode) child, lineDelta, colDelta);
+            }
+        }
+    }
+
+    private static void shiftPositionsAfter(CompactJmmNode node, CompactJmmNode method, int lineDelta, int colDelta) {
+        if (node == method) {
+            return;
+        }
+
+        int line = method.getLineEnd();
+        int col = method.getColEnd();
+        boolean startAfter = node.getLineStart() > line || (node.getLineStart() == line && node.getColStart() > col);
+        boolean endAfter = node.getLineEnd() > line || (node.getLineEnd() == line && node.getColEnd() > col);
+        if (!endAfter) {
+            // Children never end after their parent
+            return;
+        }
+
+        node.setPosition(
+                startAfter ? node.getLineStart() + lineDelta : node.getLineStart(),
+                startAfter && node.getLineStart() == line ? node.getColStart() + colDelta : node.getColStart(),
+                node.getLineEnd() + lineDelta,
+                node.getLineEnd() == line ? node.getColEnd() + colDelta : node.getColEnd());
+
+        for (JmmNode child : CompactJmmNode.childrenOf(node)) {
+            if (child instanceof CompactJmmNode) {
+                shiftPositionsAfter((CompactJmmNode) child, method, lineDelta, colDelta);
+            }
+        }
+    }
+
+    private JmmParserResult parseCode(CharStream input, String startingRule, Map<String, String> config) {
+
+        try {
+            if (ParserProfile.isEnabled(config)) {
+                return parseProfiled(input, startingRule, config);
+            }
+
+            if (ParallelParser.isEnabled(input, config)) {
+                Optional<JmmNode> root = ParallelParser.parse(input);
+                if (root.isPresent()) {
+                    SLL_PARSES.incrementAndGet();
+                    return new JmmParserResult(root.get(), Collections.emptyList(), config);
+                }
+            }
+
+            // Fast path: SLL prediction, giving up at the first error instead of recovering
+            Optional<JmmNode> sllRoot = parseSll(input, startingRule);
+            if (sllRoot.isPresent()) {
+                SLL_PARSES.incrementAndGet();
+                return new JmmParserResult(sllRoot.get(), Collections.emptyList(), config);
+            }
+            LL_FALLBACKS.incrementAndGet();
+
+            ParserInstances instances = INSTANCES.get();
+            instances.reset(input, false);
 
             // Convert ANTLR CST to JmmNode AST
-            return AntlrParser.parse(lex, parser, startingRule)
+            return instances.parse(instances.parser, startingRule)
                     // If there were no errors and a root node was generated, create a JmmParserResult with the node
                     .map(root -> new JmmParserResult(root, Collections.emptyList(), config))
                     // If there were errors, create an error JmmParserResult without root node
                     .orElseGet(() -> JmmParserResult.newError(new Report(ReportType.ERROR, Stage.SYNTATIC, -1,
-                            "There were " + parser.getNumberOfSyntaxErrors() + " syntax errors during parsing, terminating")));
+                            "There were " + instances.parser.getNumberOfSyntaxErrors()
+                                    + " syntax errors during parsing, terminating")));
 
         } catch (Exception e) {
             // There was an uncaught exception during parsing, create an error JmmParserResult without root node
             return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Exception during parsing", e));
+        } finally {
+            INSTANCES.get().release();
+        }
+    }
+
+    /**
+     * Parses with a {@link ParserProfile.ProfilingParser} in a single LL pass, adding its decision statistics to the
+     * profile. Inputs parsed this way are not counted as SLL parses or LL fallbacks.
+     */
+    private static JmmParserResult parseProfiled(CharStream input, String startingRule, Map<String, String> config) {
+        ParserInstances instances = INSTANCES.get();
+        ParserProfile.ProfilingParser parser = instances.resetProfiling(input);
+        try {
+            return instances.parse(parser, startingRule)
+                    .map(root -> new JmmParserResult(root, Collections.emptyList(), config))
+                    .orElseGet(() -> JmmParserResult.newError(new Report(ReportType.ERROR, Stage.SYNTATIC, -1,
+                            "There were " + parser.getNumberOfSyntaxErrors()
+                                    + " syntax errors during parsing, terminating")));
+        } finally {
+            ParserProfile.record(parser);
+        }
+    }
+
+    /**
+     * Parses with SLL prediction only. SLL is much faster on the expression rules and gives the same tree whenever it
+     * succeeds, but may fail on some valid inputs, which are then parsed again with full LL by the caller.
+     *
+     * @return the root node, or empty if the input could not be parsed this way
+     */
+    static Optional<JmmNode> parseSll(CharStream input, String startingRule) {
+        ParserInstances instances = INSTANCES.get();
+        instances.reset(input, true);
+
+        try {
+            return instances.parse(instances.parser, startingRule);
+        } catch (RuntimeException e) {
+            // Syntax errors end up here too, the LL pass reports them
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Parses the given sources once, so that the shared prediction DFA already knows them when the real inputs
+     * arrive. Sources with syntax errors are skipped, and the parse counters are not changed.
+     *
+     * @return how many sources were parsed
+     */
+    public static int warmUp(Collection<String> sources) {
+        int parsed = 0;
+        for (String source : sources) {
+            if (parseSll(new ANTLRInputStream(source), "program").isPresent()) {
+                parsed++;
+            }
+        }
+        INSTANCES.get().release();
+        return parsed;
+    }
+
+    /**
+     * Warms up the parser with every .jmm file below the given directory.
+     *
+     * @see #warmUp(Collection)
+     */
+    public static int warmUp(Path dir) {
+        List<String> sources = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.filter(path -> path.toString().endsWith(".jmm")).collect(Collectors.toList())) {
+                sources.add(Files.readString(path, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read warm-up sources in " + dir, e);
+        }
+        return warmUp(sources);
+    }
+
+    /**
+     * @return how many inputs were parsed by the SLL pass alone
+     */
+    public static long getSllParses() {
+        return SLL_PARSES.get();
+    }
+
+    /**
+     * @return how many inputs had to be parsed again with full LL, either because SLL failed or they had errors
+     */
+    public static long getLlFallbacks() {
+        return LL_FALLBACKS.get();
+    }
+
+    /**
+     * The lexer and parser of one thread.
+     */
+    private static class ParserInstances {
+        private final CharStream emptyInput = new ANTLRInputStream("");
+        private final JavammLexer lexer = new JavammLexer(emptyInput);
+        private final JavammParser parser = new JavammParser(new CommonTokenStream(lexer));
+
+        private ParserInstances() {
+            // Any lexer error ends the parse
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(new ThrowingErrorListener());
+        }
+
+        /**
+         * Points the instances to the start of the given input, clearing all state left by the previous parse.
+         */
+        private void reset(CharStream input, boolean sll) {
+            // The same input is read again by the LL pass when the SLL pass fails
+            input.seek(0);
+            lexer.setInputStream(input);
+            // A new token stream, setTokenSource does not clear the end of file flag of the previous input
+            parser.setTokenStream(new CommonTokenStream(lexer));
+
+            parser.removeErrorListeners();
+            if (sll) {
+                parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+                parser.setErrorHandler(new BailErrorStrategy());
+            } else {
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                parser.setErrorHandler(new DefaultErrorStrategy());
+                parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+            }
+        }
+
+        /**
+         * Points the lexer to the start of the given input, and creates a profiling parser over it. A new parser is
+         * needed for every input, since the profiling simulator keeps adding up its statistics.
+         */
+        private ParserProfile.ProfilingParser resetProfiling(CharStream input) {
+            input.seek(0);
+            lexer.setInputStream(input);
+
+            var profilingParser = new ParserProfile.ProfilingParser(new CommonTokenStream(lexer));
+            profilingParser.removeErrorListeners();
+            profilingParser.addErrorListener(ConsoleErrorListener.INSTANCE);
+            return profilingParser;
+        }
+
+        /**
+         * Runs the given rule of the given parser over the current input, building the AST as the rules are parsed.
+         *
+         * @return the root node, or empty if there were syntax errors
+         */
+        private Optional<JmmNode> parse(JavammParser parser, String startingRule) {
+            JmmNodeBuilder builder = new JmmNodeBuilder(parser);
+            parser.addParseListener(builder);
+            try {
+                var tree = (ParserRuleContext) SpecsSystem.invoke(parser, startingRule);
+                if (parser.getNumberOfSyntaxErrors() > 0) {
+                    return Optional.empty();
+                }
+
+                JmmNode root = builder.getNode(tree);
+                List<String> ignoreList = AntlrParser.getIgnoreList(parser);
+                if (!ignoreList.isEmpty()) {
+                    new JmmNodeCleanup(ignoreList).visit(root);
+                }
+                return Optional.of(root);
+            } finally {
+                parser.removeParseListener(builder);
+            }
+        }
+
+        /**
+         * Drops the tokens and input of the last parse, which would otherwise stay reachable until the next one.
+         */
+        private void release() {
+            lexer.setInputStream(emptyInput);
+            parser.setTokenStream(new CommonTokenStream(lexer));
         }
     }
 }
@@ -0,0 +1,178 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Wall time, CPU time and allocated bytes of each compiler stage, for one compilation unit.
+ *
+ * A collector is bound to the current thread between {@link #begin(String)} and {@link #end()}, and the stages
+ * record themselves with {@link #measure(String, Supplier)}. When no collector is active, measuring only runs the
+ * stage. Work that a stage hands to other threads is added with {@link #onWorkers(String, Function)}. The option
+ * "metrics" selects the report format (json or csv) and "metricsFile" where it is written.
+ */
+public class StageMetrics {
+
+    private static final ThreadLocal<StageMetrics> CURRENT = new ThreadLocal<>();
+
+    private final String unit;
+    private final Map<String, long[]> stages = new LinkedHashMap<>();
+
+    private StageMetrics(String unit) {
+        this.unit = unit;
+    }
+
+    public static boolean isEnabled(Map<String, String> config) {
+        return config.containsKey("metrics");
+    }
+
+    public static void begin(String unit) {
+        CURRENT.set(new StageMetrics(unit));
+    }
+
+    public static StageMetrics end() {
+        StageMetrics metrics = CURRENT.get();
+        CURRENT.remove();
+        return metrics;
+    }
+
+    public static <T> T measure(String stage, Supplier<T> body) {
+        StageMetrics metrics = CURRENT.get();
+        if (metrics == null) {
+            return body.get();
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocStart = allocatedBytes(threads, threadId);
+        long cpuStart = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+        long wallStart = System.nanoTime();
+        try {
+            return body.get();
+        } finally {
+            long wall = System.nanoTime() - wallStart;
+            long cpu = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() - cpuStart : 0;
+            long alloc = allocatedBytes(threads, threadId) - allocStart;
+            metrics.add(stage, wall, cpu, alloc);
+        }
+    }
+
+    /**
+     * Wraps part of a stage that runs on other threads, e.g. in a parallel stream, so that the CPU time and bytes
+     * allocated on those threads are added to the stage of the current collector. Its wall time is not added, as the
+     * stage measured on this thread already waits for it. Work that runs on this thread is measured by the stage
+     * itself and is not added again.
+     */
+    public static <T, R> Function<T, R> onWorkers(String stage, Function<T, R> body) {
+        StageMetrics metrics = CURRENT.get();
+        if (metrics == null) {
+            return body;
+        }
+
+        Thread owner = Thread.currentThread();
+        return value -> {
+            if (Thread.currentThread() == owner) {
+                return body.apply(value);
+            }
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            long allocStart = allocatedBytes(threads, threadId);
+            long cpuStart = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+            try {
+                return body.apply(value);
+            } finally {
+                long cpu = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() - cpuStart : 0;
+                long alloc = allocatedBytes(threads, threadId) - allocStart;
+                metrics.add(stage, 0, cpu, alloc);
+            }
+        };
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads, long threadId) {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        var sunThreads = (com.sun.management.ThreadMXBean) threads;
+        return sunThreads.isThreadAllocatedMemorySupported() ? sunThreads.getThreadAllocatedBytes(threadId) : 0;
+    }
+
+    // Synchronized for the threads of onWorkers
+    private synchronized void add(String stage, long wall, long cpu, long alloc) {
+        // A stage that runs more than once (e.g. both optimize passes) is reported as a single total
+        long[] values = stages.computeIfAbsent(stage, key -> new long[3]);
+        values[0] += wall;
+        values[1] += cpu;
+        values[2] += alloc;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public static String toCsv(List<StageMetrics> metricsList) {
+        StringBuilder csv = new StringBuilder("unit,stage,wallNanos,cpuNanos,allocatedBytes\n");
+        for (StageMetrics metrics : metricsList) {
+            for (Map.Entry<String, long[]> stage : metrics.stages.entrySet()) {
+                long[] values = stage.getValue();
+                csv.append('"').append(metrics.unit.replace("\"", "\"\"")).append('"')
+                        .append(',').append(stage.getKey())
+                        .append(',').append(values[0])
+                        .append(',').append(values[1])
+                        .append(',').append(values[2])
+                        .append('\n');
+            }
+        }
+        return csv.toString();
+    }
+
+    public static String toJson(List<StageMetrics> metricsList) {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < metricsList.size(); i++) {
+            StageMetrics metrics = metricsList.get(i);
+            json.append("  {\"unit\": \"").append(escapeJson(metrics.unit)).append("\", \"stages\": [");
+            int j = 0;
+            for (Map.Entry<String, long[]> stage : metrics.stages.entrySet()) {
+                long[] values = stage.getValue();
+                json.append(j++ == 0 ? "\n" : ",\n")
+                        .append("    {\"stage\": \"").append(stage.getKey())
+                        .append("\", \"wallNanos\": ").append(values[0])
+                        .append(", \"cpuNanos\": ").append(values[1])
+                        .append(", \"allocatedBytes\": ").append(values[2])
+                        .append("}");
+            }
+            json.append("\n  ]}").append(i < metricsList.size() - 1 ? ",\n" : "\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    /**
+     * Writes the report in the format given by "metrics" to "metricsFile", or to stderr if no file is given.
+     */
+    public static void write(List<StageMetrics> metricsList, Map<String, String> config) {
+        String format = config.getOrDefault("metrics", "json");
+        String report = switch (format) {
+            case "csv" -> toCsv(metricsList);
+            case "json", "true" -> toJson(metricsList);
+            default -> throw new RuntimeException("Unknown metrics format '" + format + "', expected json or csv");
+        };
+
+        if (config.containsKey("metricsFile")) {
+            SpecsIo.write(new File(config.get("metricsFile")), report);
+        } else {
+            System.err.print(report);
+        }
+    }
+
+    private static String escapeJson(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
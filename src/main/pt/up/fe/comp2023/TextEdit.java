@@ -0,0 +1,69 @@
+package pt.up.fe.comp2023;
+
+/**
+ * A change to a source file: the characters from offset to offset + length replaced by a new text.
+ */
+public class TextEdit {
+
+    private final int offset;
+    private final int length;
+    private final String text;
+
+    public TextEdit(int offset, int length, String text) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid edit range " + offset + "+" + length);
+        }
+        this.offset = offset;
+        this.length = length;
+        this.text = text;
+    }
+
+    /**
+     * @return the smallest edit that turns the old code into the new one
+     */
+    public static TextEdit between(String oldCode, String newCode) {
+        int maxPrefix = Math.min(oldCode.length(), newCode.length());
+        int prefix = 0;
+        while (prefix < maxPrefix && oldCode.charAt(prefix) == newCode.charAt(prefix)) {
+            prefix++;
+        }
+
+        int maxSuffix = maxPrefix - prefix;
+        int suffix = 0;
+        while (suffix < maxSuffix && oldCode.charAt(oldCode.length() - 1 - suffix)
+                == newCode.charAt(newCode.length() - 1 - suffix)) {
+            suffix++;
+        }
+
+        return new TextEdit(prefix, oldCode.length() - prefix - suffix,
+                newCode.substring(prefix, newCode.length() - suffix));
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the offset right after the replaced characters, in the old code
+     */
+    public int getEnd() {
+        return offset + length;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String apply(String code) {
+        return code.substring(0, offset) + text + code.substring(offset + length);
+    }
+
+    @Override
+    public String toString() {
+        return "TextEdit{offset=" + offset + ", length=" + length + ", text='" + text + "'}";
+    }
+}
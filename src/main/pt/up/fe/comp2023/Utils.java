@@ -17,34 +17,36 @@ public class Utils {
     public static Type getType(JmmNode jmmNode) {
         switch (jmmNode.getKind()) {
             case "ArrayType" -> {
-                return new Type(getType(jmmNode.getJmmChild(0)).getName(), true);
+                Type elementType = getType(jmmNode.getJmmChild(0));
+                Type builtIn = Interner.getBuiltInType(elementType.getName(), true);
+                return builtIn != null ? builtIn : new Type(elementType.getName(), true);
             }
             case "BooleanType" -> {
-                return new Type("boolean", false);
+                return Interner.BOOLEAN;
             }
             case "IntegerType" -> {
-                return new Type("int", false);
+                return Interner.INT;
             }
             case "CharType" -> {
-                return new Type("char", false);
+                return Interner.CHAR;
             }
             case "DoubleType" -> {
-                return new Type("double", false);
+                return Interner.DOUBLE;
             }
             case "FloatType" -> {
-                return new Type("float", false);
+                return Interner.FLOAT;
             }
             case "ByteType" -> {
-                return new Type("byte", false);
+                return Interner.BYTE;
             }
             case "ShortType" -> {
-                return new Type("short", false);
+                return Interner.SHORT;
             }
             case "LongType" -> {
-                return new Type("long", false);
+                return Interner.LONG;
             }
             case "VoidType" -> {
-                return new Type("void", false);
+                return Interner.VOID;
             }
         }
         return new Type(jmmNode.get("name"), false);
@@ -0,0 +1,36 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Remembers the visit method chosen for each {@link NodeKind}, so that visitors look it up in an array instead of
+ * searching the node hierarchy in a map of Strings for every node.
+ *
+ * Visitors use it by overriding getVisit, which is safe as long as they only add visits while being built.
+ */
+public class VisitCache<D, R> {
+
+    private final BiFunction<JmmNode, D, R>[] visits = newVisits(NodeKind.values().length);
+
+    @SuppressWarnings("unchecked")
+    private static <D, R> BiFunction<JmmNode, D, R>[] newVisits(int size) {
+        return (BiFunction<JmmNode, D, R>[]) new BiFunction<?, ?, ?>[size];
+    }
+
+    public BiFunction<JmmNode, D, R> get(JmmNode node, Function<JmmNode, BiFunction<JmmNode, D, R>> lookup) {
+        if (!(node instanceof CompactJmmNode) || ((CompactJmmNode) node).getNodeKind() == null) {
+            return lookup.apply(node);
+        }
+
+        int index = ((CompactJmmNode) node).getNodeKind().ordinal();
+        BiFunction<JmmNode, D, R> visit = visits[index];
+        if (visit == null) {
+            visit = lookup.apply(node);
+            visits[index] = visit;
+        }
+        return visit;
+    }
+}
@@ -0,0 +1,364 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2023.Ollir.MyOptimizer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Watches a directory tree and recompiles .jmm files as they change, keeping every compilation in memory.
+ *
+ * When a file changes, only that file is compiled again, together with the files that import the class it defines.
+ * Imports of classes defined by watched files are resolved against their last symbol tables, before the library
+ * classes, so that dependents see the new members. Those dependents are not parsed again: they are analysed from a
+ * copy of the AST kept from their last parse. When
+ * the change is inside a single method, only that method is parsed again and spliced into a copy of the last AST.
+ */
+public class WatchCompiler implements AutoCloseable {
+
+    // Editors usually write a file in several steps, wait this long for the last event before recompiling
+    private static final long DEBOUNCE_MS = 30;
+
+    private final Path root;
+    private final Map<String, String> config;
+    private final CompilationPipeline pipeline = new CompilationPipeline(() -> new SimpleParser(),
+            () -> new MyAnalyser(this::resolveImports), () -> new MyOptimizer(), () -> new JasminGenerator());
+    private final SimpleParser parser = new SimpleParser();
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final Map<Path, Unit> units = new HashMap<>();
+    // The classes defined by the watched files, as of their last successful analysis
+    private final Map<Path, ImportResolver.ImportedClass> sourceClasses = new HashMap<>();
+
+    public WatchCompiler(Path root, Map<String, String> config) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new RuntimeException("Expected a directory to watch, got '" + root + "'.");
+        }
+        this.root = root;
+        this.config = config;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Compiles every file under the root once and then recompiles on each change, until the thread is interrupted or
+     * the watcher is closed.
+     */
+    public void run() throws IOException {
+        long start = System.nanoTime();
+        Set<Path> initial = register(root);
+        List<Path> compiled = recompile(initial, Set.of());
+        System.out.println("Compiled " + compiled.size() + " files in " + (System.nanoTime() - start) / 1_000_000
+                + " ms, watching " + root + " for changes");
+
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                Set<Path> deleted = new LinkedHashSet<>();
+                while (key != null) {
+                    collectEvents(key, changed, deleted);
+                    key = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                }
+
+                start = System.nanoTime();
+                compiled = recompile(changed, deleted);
+                if (!compiled.isEmpty() || !deleted.isEmpty()) {
+                    System.out.println("Recompiled " + compiled.size() + " files in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Closed from another thread, stop watching
+        }
+    }
+
+    private void collectEvents(WatchKey key, Set<Path> changed, Set<Path> deleted) throws IOException {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, look at every file again
+                changed.addAll(findSources(root));
+                continue;
+            }
+
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                if (isSource(path)) {
+                    deleted.add(path);
+                    changed.remove(path);
+                }
+            } else if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    changed.addAll(register(path));
+                }
+            } else if (isSource(path)) {
+                changed.add(path);
+                deleted.remove(path);
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    /**
+     * Watches the given directory and all directories below it.
+     *
+     * @return the source files that are already there
+     */
+    private Set<Path> register(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path subDir : paths.filter(Files::isDirectory).collect(Collectors.toList())) {
+                WatchKey key = subDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirs.put(key, subDir);
+            }
+        }
+        return findSources(dir);
+    }
+
+    private static Set<Path> findSources(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(WatchCompiler::isSource).sorted().collect(Collectors.toCollection(LinkedHashSet::new));
+        }
+    }
+
+    private static boolean isSource(Path path) {
+        return path.toString().endsWith(".jmm") && !Files.isDirectory(path);
+    }
+
+    /**
+     * Compiles the changed files whose contents are different from the last compilation, drops the deleted ones,
+     * and then compiles again every file that imports a class defined by any of them.
+     *
+     * @return the files that were compiled
+     */
+    List<Path> recompile(Set<Path> changed, Set<Path> deleted) {
+        Set<String> changedClasses = new HashSet<>();
+        List<Path> compiled = new ArrayList<>();
+
+        for (Path path : deleted) {
+            Unit unit = units.remove(path);
+            sourceClasses.remove(path);
+            if (unit != null) {
+                changedClasses.addAll(unit.getDefinedNames());
+            }
+        }
+
+        for (Path path : changed) {
+            String code;
+            try {
+                code = Files.readString(path, StandardCharsets.UTF_8);
+            } catch (IOException | UncheckedIOException e) {
+                // The file may have been removed or be half written, a later event will bring it back
+                continue;
+            }
+
+            Unit previous = units.get(path);
+            if (previous != null && previous.code.equals(code)) {
+                continue;
+            }
+            if (previous != null) {
+                changedClasses.addAll(previous.getDefinedNames());
+            }
+
+            Unit unit = compileSource(path, code, previous);
+            units.put(path, unit);
+            changedClasses.addAll(unit.getDefinedNames());
+            compiled.add(path);
+        }
+
+        if (changedClasses.isEmpty()) {
+            return compiled;
+        }
+
+        for (Map.Entry<Path, Unit> entry : new ArrayList<>(units.entrySet())) {
+            if (compiled.contains(entry.getKey()) || !entry.getValue().importsAny(changedClasses)) {
+                continue;
+            }
+            units.put(entry.getKey(), compileDependent(entry.getKey(), entry.getValue()));
+            compiled.add(entry.getKey());
+        }
+
+        return compiled;
+    }
+
+    private Unit compileSource(Path path, String code, Unit previous) {
+        long start = System.nanoTime();
+        CompilationContext context = new CompilationContext(code, fileConfig(path));
+
+        JmmParserResult parsed = previous != null && previous.parsed != null ? reparse(previous, code, context) : null;
+        if (parsed != null) {
+            context.setParserResult(new JmmParserResult(copy(parsed.getRootNode()), parsed.getReports(),
+                    context.getConfig()));
+        } else {
+            // Keep an untouched copy of the AST, analysis adds attributes to the nodes it visits
+            parsed = pipeline.parse(context)
+                    .map(result -> new JmmParserResult(copy(result.getRootNode()), result.getReports(),
+                            result.getConfig()))
+                    .orElse(null);
+        }
+
+        pipeline.runUntil(context, CompilationPipeline.Step.JASMIN);
+        return finish(path, code, parsed, context, start);
+    }
+
+    /**
+     * Parses again only the method that changed, on a copy of the last AST of the file.
+     *
+     * @return the new AST, or null if the change was not inside a single method
+     */
+    private JmmParserResult reparse(Unit previous, String code, CompilationContext context) {
+        JmmParserResult copy = new JmmParserResult(copy(previous.parsed.getRootNode()), previous.parsed.getReports(),
+                context.getConfig());
+        TextEdit edit = TextEdit.between(previous.code, code);
+        return parser.reparseMethod(copy, previous.code, edit, null).isPresent() ? copy : null;
+    }
+
+    private Unit compileDependent(Path path, Unit unit) {
+        if (unit.parsed == null) {
+            return compileSource(path, unit.code, null);
+        }
+
+        long start = System.nanoTime();
+        CompilationContext context = new CompilationContext(unit.code, fileConfig(path));
+        context.setParserResult(new JmmParserResult(copy(unit.parsed.getRootNode()), unit.parsed.getReports(),
+                unit.parsed.getConfig()));
+
+        pipeline.runUntil(context, CompilationPipeline.Step.JASMIN);
+        return finish(path, unit.code, unit.parsed, context, start);
+    }
+
+    private Unit finish(Path path, String code, JmmParserResult parsed, CompilationContext context, long start) {
+        CompilationOutput output = context.toOutput();
+        try {
+            OutputWriter.fromConfig(config).ifPresent(writer -> writer.write(output));
+        } catch (UncheckedIOException e) {
+            context.addReport(Report.newError(Stage.OTHER, -1, -1, e.getMessage(), e));
+        }
+
+        if (context.getSemanticsResult() != null
+                && context.getSemanticsResult().getSymbolTable() instanceof MySymbolTable) {
+            sourceClasses.put(path, ImportResolver.describe((MySymbolTable) context.getSemanticsResult().getSymbolTable()));
+        }
+
+        List<Report> reports = context.getReports();
+        System.out.print(new BatchCompiler.FileSummary(path.toFile(), reports, System.nanoTime() - start, null).print());
+        return new Unit(path, code, parsed, context);
+    }
+
+    private ImportResolver resolveImports(Map<String, String> config) {
+        return ImportResolver.fromConfig(config).withClasses(sourceClasses.values());
+    }
+
+    private Map<String, String> fileConfig(Path path) {
+        Map<String, String> fileConfig = new HashMap<>(config);
+        fileConfig.put("inputFile", path.toString());
+        return fileConfig;
+    }
+
+    private static JmmNode copy(JmmNode node) {
+        if (node instanceof CompactJmmNode) {
+            return ((CompactJmmNode) node).copy();
+        }
+
+        JmmNodeImpl copy = new JmmNodeImpl(node.getKind());
+        copy.setHierarchy(new ArrayList<>(node.getHierarchy()));
+        for (String attribute : node.getAttributes()) {
+            copy.putObject(attribute, node.getObject(attribute));
+        }
+        for (JmmNode child : CompactJmmNode.childrenOf(node)) {
+            copy.add(copy(child));
+        }
+        return copy;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * The last compilation of one file.
+     */
+    private static class Unit {
+        private final Path path;
+        private final String code;
+        private final JmmParserResult parsed;
+        private final CompilationContext context;
+
+        private Unit(Path path, String code, JmmParserResult parsed, CompilationContext context) {
+            this.path = path;
+            this.code = code;
+            this.parsed = parsed;
+            this.context = context;
+        }
+
+        /**
+         * @return the class defined in the file and the file name, in case the class could not be analysed
+         */
+        private Set<String> getDefinedNames() {
+            Set<String> names = new HashSet<>();
+            String fileName = path.getFileName().toString();
+            names.add(fileName.substring(0, fileName.length() - ".jmm".length()));
+            if (context.getSemanticsResult() != null) {
+                names.add(context.getSemanticsResult().getSymbolTable().getClassName());
+            }
+            return names;
+        }
+
+        private boolean importsAny(Set<String> classNames) {
+            for (String imported : getImports()) {
+                String simpleName = imported.substring(imported.lastIndexOf('.') + 1);
+                if (classNames.contains(simpleName)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<String> getImports() {
+            if (context.getSemanticsResult() != null) {
+                return context.getSemanticsResult().getSymbolTable().getImports();
+            }
+
+            // Analysis failed, read the imports straight from the AST
+            List<String> imports = new ArrayList<>();
+            if (parsed != null) {
+                for (JmmNode child : CompactJmmNode.childrenOf(parsed.getRootNode())) {
+                    if (child.getKind().equals("Import")) {
+                        imports.add(String.join(".", (List<String>) child.getObject("value")));
+                    }
+                }
+            }
+            return imports;
+        }
+    }
+}
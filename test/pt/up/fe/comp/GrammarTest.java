@@ -14,6 +14,11 @@
 package pt.up.fe.comp;
 
 import org.junit.Test;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
 
 public class GrammarTest {
 
@@ -240,4 +245,74 @@ public class GrammarTest {
         TestUtils.parseVerbose("1 && 2 < 3 + 4 - 5 * 6 / 7", EXPRESSION);
     }
 
+    // Operators as op(left, right), if statements as kind(children), everything else as its name or kind
+    private static String shape(JmmNode node) {
+        if (node.getKind().equals("Brackets") || node.getKind().equals("GeneralStatement")) {
+            return shape(node.getJmmChild(0));
+        }
+        String label = node.getOptional("op").orElse(null);
+        if (label == null && node.getKind().startsWith("If")) {
+            label = node.getKind();
+        }
+        if (label == null) {
+            return node.getOptional("name").orElse(node.getKind());
+        }
+        return label + node.getChildren().stream().map(GrammarTest::shape).collect(Collectors.joining(", ", "(", ")"));
+    }
+
+    private static String parseShape(String code, String rule) {
+        return shape(TestUtils.parse(code, rule).getRootNode());
+    }
+
+    @Test
+    public void testPrecedenceMultiplicativeOverAdditive() {
+        assertEquals("+(1, *(2, 3))", parseShape("1 + 2 * 3", EXPRESSION));
+        assertEquals("-(/(1, 2), 3)", parseShape("1 / 2 - 3", EXPRESSION));
+    }
+
+    @Test
+    public void testPrecedenceAdditiveOverRelational() {
+        assertEquals("<(a, +(b, 1))", parseShape("a < b + 1", EXPRESSION));
+        assertEquals(">=(-(a, 1), b)", parseShape("a - 1 >= b", EXPRESSION));
+    }
+
+    @Test
+    public void testPrecedenceRelationalOverEquality() {
+        assertEquals("==(a, <(b, c))", parseShape("a == b < c", EXPRESSION));
+    }
+
+    @Test
+    public void testPrecedenceLogical() {
+        assertEquals("||(&&(a, b), c)", parseShape("a && b || c", EXPRESSION));
+        assertEquals("||(a, &&(b, c))", parseShape("a || b && c", EXPRESSION));
+        assertEquals("&&(!=(a, b), <(c, d))", parseShape("a != b && c < d", EXPRESSION));
+    }
+
+    @Test
+    public void testPrecedenceUnaryOverBinary() {
+        assertEquals("&&(UnaryOp, b)", parseShape("!a && b", EXPRESSION));
+    }
+
+    @Test
+    public void testLeftAssociativity() {
+        assertEquals("-(-(1, 2), 3)", parseShape("1 - 2 - 3", EXPRESSION));
+        assertEquals("/(/(8, 4), 2)", parseShape("8 / 4 / 2", EXPRESSION));
+    }
+
+    @Test
+    public void testBracketsOverridePrecedence() {
+        assertEquals("*(+(1, 2), 3)", parseShape("(1 + 2) * 3", EXPRESSION));
+    }
+
+    @Test
+    public void testIfStatementKinds() {
+        assertEquals("IfStatement(a, x)", parseShape("if(a)x;", STATEMENT));
+        assertEquals("IfElseStatement(a, x, y)", parseShape("if(a)x;else y;", STATEMENT));
+    }
+
+    @Test
+    public void testDanglingElse() {
+        // The else belongs to the closest if
+        assertEquals("IfStatement(a, IfElseStatement(b, x, y))", parseShape("if(a)if(b)x;else y;", STATEMENT));
+    }
 }
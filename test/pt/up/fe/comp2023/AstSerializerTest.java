@@ -0,0 +1,149 @@
+package pt.up.fe.comp2023;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes trees and symbol tables with {@link AstSerializer} and checks that {@link AstFile} reads them back the same,
+ * from bytes and from a file, and when the lazy children are read from several threads at once.
+ */
+public class AstSerializerTest {
+
+    private static final List<String> FILES = List.of(
+            "pt/up/fe/comp/cp2/apps/HelloWorld.jmm",
+            "pt/up/fe/comp/cp2/apps/Simple.jmm",
+            "pt/up/fe/comp/jmm/symboltable/MethodsAndFields.jmm",
+            "pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayAsArg.jmm",
+            "pt/up/fe/comp/cp2/semanticanalysis/ObjectAssignmentPassImports.jmm");
+
+    // Many methods, whose children are all read lazily
+    private static final String MANY_METHODS = "pt/up/fe/comp2023/parse/ManyMethods.jmm";
+
+    private static final int THREADS = 8;
+
+    private static Map<String, String> config() {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "false");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        return config;
+    }
+
+    private static CompilationContext analyse(String file) {
+        CompilationContext context = new CompilationPipeline().compile(SpecsIo.getResource(file), config(),
+                CompilationPipeline.Step.ANALYSIS);
+        assertNotNull(file, context.getParserResult().getRootNode());
+        assertNotNull(file, context.getSemanticsResult());
+        return context;
+    }
+
+    private static void assertSameTree(String file, CompilationContext context, AstFile astFile) {
+        assertEquals(file, TreeDump.withAttributes(context.getParserResult().getRootNode()),
+                TreeDump.withAttributes(astFile.getRoot()));
+        assertTrue(file, astFile.getSymbolTable().isPresent());
+        assertEquals(file, context.getSemanticsResult().getSymbolTable().print(), astFile.getSymbolTable().get().print());
+    }
+
+    @Test
+    public void roundTripBytes() {
+        for (String file : FILES) {
+            CompilationContext context = analyse(file);
+            MySymbolTable table = (MySymbolTable) context.getSemanticsResult().getSymbolTable();
+            byte[] bytes = AstSerializer.write(context.getParserResult().getRootNode(), table);
+            assertSameTree(file, context, AstFile.fromBytes(bytes));
+        }
+    }
+
+    @Test
+    public void roundTripFile() throws Exception {
+        Path path = Files.createTempFile("ast", ".bin");
+        try {
+            for (String file : FILES) {
+                CompilationContext context = analyse(file);
+                MySymbolTable table = (MySymbolTable) context.getSemanticsResult().getSymbolTable();
+                AstSerializer.write(path, context.getParserResult().getRootNode(), table);
+                assertSameTree(file, context, AstFile.open(path));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void withoutSymbolTable() {
+        CompilationContext context = analyse(FILES.get(1));
+        AstFile astFile = AstFile.fromBytes(AstSerializer.write(context.getParserResult().getRootNode(), null));
+        assertTrue(astFile.getSymbolTable().isEmpty());
+        assertEquals(TreeDump.withAttributes(context.getParserResult().getRootNode()),
+                TreeDump.withAttributes(astFile.getRoot()));
+    }
+
+    @Test
+    public void nodeAttributesReferToChildren() {
+        CompilationContext context = analyse(FILES.get(3));
+        JmmNode root = AstFile.fromBytes(AstSerializer.write(context.getParserResult().getRootNode(), null)).getRoot();
+
+        List<JmmNode> parameters = new ArrayList<>();
+        TreeDump.collect(root, "Parameter", parameters);
+        assertTrue(!parameters.isEmpty());
+        for (JmmNode parameter : parameters) {
+            assertSame(parameter.getJmmChild(0), parameter.getObject("type"));
+            List<Object> nameTypes = parameter.getObjectAsList("nameType");
+            for (int i = 0; i < nameTypes.size(); i++) {
+                assertSame(parameter.getJmmChild(i), nameTypes.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentLazyLoading() throws Exception {
+        JmmNode parsed = new SimpleParser().parse(SpecsIo.getResource(MANY_METHODS), config()).getRootNode();
+        String expected = TreeDump.withAttributes(parsed);
+        byte[] bytes = AstSerializer.write(parsed, null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < 20; round++) {
+                // Every thread reads the same tree, whose method children are not decoded yet
+                AstFile astFile = AstFile.fromBytes(bytes);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Callable<String>> readers = new ArrayList<>();
+                for (int i = 0; i < THREADS; i++) {
+                    readers.add(() -> {
+                        start.await();
+                        return TreeDump.withAttributes(astFile.getRoot());
+                    });
+                }
+
+                List<Future<String>> futures = new ArrayList<>();
+                for (Callable<String> reader : readers) {
+                    futures.add(executor.submit(reader));
+                }
+                start.countDown();
+                for (Future<String> future : futures) {
+                    assertEquals("Round " + round, expected, future.get());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package pt.up.fe.comp2023;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Changes to the children of {@link CompactJmmNode}, copies of subtrees and children that are loaded lazily.
+ */
+public class CompactJmmNodeTest {
+
+    private static CompactJmmNode node(String name) {
+        CompactJmmNode node = new CompactJmmNode("Test", List.of("Test"));
+        node.put("name", name);
+        return node;
+    }
+
+    // The parent with the children a, b, c...
+    private static CompactJmmNode parent(String... names) {
+        CompactJmmNode parent = node("parent");
+        for (String name : names) {
+            parent.add(node(name));
+        }
+        return parent;
+    }
+
+    private static List<String> names(JmmNode node) {
+        List<String> names = new ArrayList<>();
+        for (JmmNode child : node.getChildren()) {
+            names.add(child.get("name"));
+        }
+        return names;
+    }
+
+    @Test
+    public void childrenAreCopied() {
+        CompactJmmNode parent = parent("a", "b", "c");
+        List<JmmNode> children = parent.getChildren();
+        List<JmmNode> view = parent.getChildrenView();
+
+        // Removing while going through the copy visits every child
+        for (JmmNode child : children) {
+            parent.removeJmmChild(child);
+        }
+        assertEquals(3, children.size());
+        assertEquals(0, parent.getNumChildren());
+        assertTrue(view.isEmpty());
+
+        parent.add(node("d"));
+        assertEquals("d", view.get(0).get("name"));
+        try {
+            view.add(node("e"));
+            fail("The view can be changed");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void childrenOf() {
+        CompactJmmNode parent = parent("a");
+        assertSame(parent.getChildrenView(), CompactJmmNode.childrenOf(parent));
+
+        JmmNode other = new JmmNodeImpl("Other");
+        other.add(new JmmNodeImpl("Child"));
+        assertEquals(1, CompactJmmNode.childrenOf(other).size());
+    }
+
+    @Test
+    public void setChildFromSibling() {
+        CompactJmmNode parent = parent("a", "b", "c");
+        JmmNode a = parent.getJmmChild(0);
+        JmmNode c = parent.getJmmChild(2);
+
+        // Moving c takes it out of its own slot first, a is then replaced where it is
+        parent.setChild(c, 0);
+        assertEquals(List.of("c", "b"), names(parent));
+        assertSame(parent, c.getJmmParent());
+        assertNull(a.getJmmParent());
+
+        parent.setChild(c, 0);
+        assertEquals(List.of("c", "b"), names(parent));
+        assertSame(parent, c.getJmmParent());
+    }
+
+    @Test
+    public void setChildFromOtherParent() {
+        CompactJmmNode parent = parent("a", "b");
+        CompactJmmNode other = parent("x", "y");
+        JmmNode x = other.getJmmChild(0);
+
+        parent.setChild(x, 1);
+        assertEquals(List.of("a", "x"), names(parent));
+        assertEquals(List.of("y"), names(other));
+        assertSame(parent, x.getJmmParent());
+    }
+
+    @Test
+    public void removeChild() {
+        CompactJmmNode parent = parent("a", "b", "c", "d");
+        JmmNode b = parent.getJmmChild(1);
+
+        assertSame(b, parent.removeJmmChild(1));
+        assertNull(b.getJmmParent());
+        assertEquals(List.of("a", "c", "d"), names(parent));
+
+        JmmNode d = parent.getJmmChild(2);
+        assertEquals(2, parent.removeJmmChild(d));
+        assertEquals(List.of("a", "c"), names(parent));
+
+        assertNull(parent.removeJmmChild(5));
+        assertEquals(-1, parent.removeJmmChild(d));
+        assertEquals(List.of("a", "c"), names(parent));
+
+        parent.getJmmChild(0).delete();
+        assertEquals(List.of("c"), names(parent));
+    }
+
+    @Test
+    public void copyRemapsNodeAttributes() {
+        CompactJmmNode outside = node("outside");
+        CompactJmmNode parent = parent("a", "b");
+        JmmNode a = parent.getJmmChild(0);
+        JmmNode b = parent.getJmmChild(1);
+        parent.putObject("first", a);
+        parent.putObject("all", List.of(a, b, "text"));
+        parent.putObject("outside", outside);
+        ((CompactJmmNode) b).putObject("sibling", a);
+
+        String original = TreeDump.withAttributes(parent);
+        CompactJmmNode copy = parent.copy();
+        assertEquals(original, TreeDump.withAttributes(copy));
+        JmmNode copyA = copy.getJmmChild(0);
+        JmmNode copyB = copy.getJmmChild(1);
+        assertNotSame(a, copyA);
+        assertSame(copy, copyA.getJmmParent());
+        assertEquals(List.of("a", "b"), names(copy));
+
+        assertSame(copyA, copy.getObject("first"));
+        List<Object> all = copy.getObjectAsList("all");
+        assertSame(copyA, all.get(0));
+        assertSame(copyB, all.get(1));
+        assertEquals("text", all.get(2));
+        assertSame(copyA, copyB.getObject("sibling"));
+        // Nodes outside the copied subtree are shared
+        assertSame(outside, copy.getObject("outside"));
+
+        // The original is untouched
+        copy.removeJmmChild(0);
+        assertEquals(original, TreeDump.withAttributes(parent));
+        assertSame(a, parent.getObject("first"));
+    }
+
+    @Test
+    public void lazyChildren() {
+        CompactJmmNode parent = node("parent");
+        AtomicInteger loads = new AtomicInteger();
+        parent.setChildrenLoader(() -> {
+            loads.incrementAndGet();
+            // The loader adds the children through the node, which must not run the loader again
+            parent.add(node("a"));
+            parent.add(node("b"));
+        });
+        assertEquals(0, loads.get());
+
+        List<JmmNode> view = parent.getChildrenView();
+        assertEquals(0, loads.get());
+        assertEquals(2, view.size());
+        assertEquals(1, loads.get());
+
+        assertEquals(List.of("a", "b"), names(parent));
+        assertEquals(2, parent.getNumChildren());
+        parent.add(node("c"));
+        assertEquals(List.of("a", "b", "c"), names(parent));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void lazyChildrenLoadedByEveryAccess() {
+        for (int access = 0; access < 5; access++) {
+            CompactJmmNode parent = node("parent");
+            parent.setChildrenLoader(() -> parent.add(node("a")));
+            switch (access) {
+                case 0 -> assertEquals(1, parent.getNumChildren());
+                case 1 -> assertEquals("a", parent.getJmmChild(0).get("name"));
+                case 2 -> assertEquals(List.of("a"), names(parent));
+                case 3 -> assertEquals(List.of("a"), names(parent.copy()));
+                default -> {
+                    parent.add(node("b"), 0);
+                    assertEquals(List.of("b", "a"), names(parent));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package pt.up.fe.comp2023;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hits and misses of {@link CompilationCache}, eviction of the least recently used entries and the size of the cache.
+ */
+public class CompilationCacheTest {
+
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private Path dir;
+
+    @Before
+    public void createDir() throws Exception {
+        dir = Files.createTempDirectory("jmm-cache");
+    }
+
+    @After
+    public void deleteDir() throws Exception {
+        SpecsIo.deleteFolderContents(dir.toFile());
+        Files.deleteIfExists(dir);
+    }
+
+    // Outputs of the same size, so that the limits can be given in entries
+    private static CompilationOutput output(int id) {
+        return new CompilationOutput("Class" + (char) ('A' + id), ".ollir", ".jasmin", List.of());
+    }
+
+    private static long entrySize() throws Exception {
+        Path other = Files.createTempDirectory("jmm-cache");
+        try {
+            CompilationCache cache = CompilationCache.open(other, NO_LIMIT);
+            cache.put("key", output(0));
+            return cache.getSizeBytes();
+        } finally {
+            SpecsIo.deleteFolderContents(other.toFile());
+            Files.deleteIfExists(other);
+        }
+    }
+
+    private Path entry(String key) {
+        return dir.resolve(key + ".entry");
+    }
+
+    private long sizeOnDisk() throws Exception {
+        try (Stream<Path> entries = Files.list(dir)) {
+            long size = 0;
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                size += Files.size(entry);
+            }
+            return size;
+        }
+    }
+
+    @Test
+    public void hitAndMiss() {
+        CompilationCache cache = CompilationCache.open(dir, NO_LIMIT);
+        assertTrue(cache.get("key").isEmpty());
+        assertEquals(1, cache.getMisses());
+
+        cache.put("key", output(1));
+        Optional<CompilationOutput> hit = cache.get("key");
+        assertTrue(hit.isPresent());
+        assertEquals("ClassB", hit.get().getClassName());
+        assertEquals(".ollir", hit.get().getOllirCode());
+        assertEquals(".jasmin", hit.get().getJasminCode());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void truncatedEntryIsAMiss() throws Exception {
+        CompilationCache cache = CompilationCache.open(dir, NO_LIMIT);
+        cache.put("key", output(1));
+        try (FileChannel channel = FileChannel.open(entry("key"), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+
+        assertTrue(cache.get("key").isEmpty());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        long size = entrySize();
+        // Room for two entries and a half, three are written
+        CompilationCache cache = CompilationCache.open(dir, size * 5 / 2);
+
+        cache.put("a", output(0));
+        cache.put("b", output(1));
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(entry("a"), FileTime.fromMillis(now - 20_000));
+        Files.setLastModifiedTime(entry("b"), FileTime.fromMillis(now - 10_000));
+        // Reading "a" makes "b" the oldest entry
+        assertTrue(cache.get("a").isPresent());
+
+        cache.put("c", output(2));
+        assertEquals(1, cache.getEvictions());
+        assertTrue(Files.exists(entry("a")));
+        assertTrue(Files.notExists(entry("b")));
+        assertTrue(Files.exists(entry("c")));
+        assertEquals(sizeOnDisk(), cache.getSizeBytes());
+    }
+
+    @Test
+    public void sizeIsCountedAgainBeforeEvicting() throws Exception {
+        long size = entrySize();
+        CompilationCache cache = CompilationCache.open(dir, size * 5 / 2);
+
+        cache.put("a", output(0));
+        cache.put("b", output(1));
+        // Removed by someone else, the cache still counts it
+        Files.delete(entry("a"));
+        assertEquals(2 * size, cache.getSizeBytes());
+
+        // Over the limit by the count, but not on disk
+        cache.put("c", output(2));
+        assertEquals(0, cache.getEvictions());
+        assertTrue(Files.exists(entry("b")));
+        assertEquals(2 * size, cache.getSizeBytes());
+    }
+
+    @Test
+    public void concurrentWritesOfTheSameKey() throws Exception {
+        long size = entrySize();
+        // Room for a single entry, which must never be evicted however many times it is written
+        CompilationCache cache = CompilationCache.open(dir, size * 3 / 2);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> writers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 50; j++) {
+                        cache.put("key", output(1));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(Files.exists(entry("key")));
+        assertEquals(0, cache.getEvictions());
+        assertTrue(cache.get("key").isPresent());
+    }
+}
@@ -0,0 +1,265 @@
+package pt.up.fe.comp2023;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Starts a {@link CompilerServer} on an ephemeral port and talks to it with {@link CompilerClient} and with raw
+ * requests.
+ */
+public class CompilerServerTest {
+
+    private static final String HELLO_WORLD = "pt/up/fe/comp/cp2/apps/HelloWorld.jmm";
+
+    private Path dir;
+    private Path tokenFile;
+    private CompilerServer server;
+    private Thread serverThread;
+
+    @Before
+    public void startServer() throws Exception {
+        dir = Files.createTempDirectory("jmm-server");
+        tokenFile = dir.resolve("server.token");
+
+        Map<String, String> config = new HashMap<>();
+        config.put("port", "0");
+        config.put("tokenFile", tokenFile.toString());
+        config.put("threads", "2");
+        server = new CompilerServer(config);
+        serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serverThread.start();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!Files.exists(tokenFile) || server.getLocalPort() <= 0) {
+            assertTrue("Server did not start", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.shutdown();
+        serverThread.join(10_000);
+        SpecsIo.deleteFolderContents(dir.toFile());
+        Files.deleteIfExists(dir);
+    }
+
+    private Map<String, String> clientConfig() {
+        Map<String, String> config = new HashMap<>();
+        config.put("port", String.valueOf(server.getLocalPort()));
+        config.put("tokenFile", tokenFile.toString());
+        config.put("optimize", "false");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        return config;
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    private static CompilationOutput send(Socket socket, String token, String command, String payload)
+            throws IOException {
+        var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        CompilerProtocol.writeRequest(out, token, command, new HashMap<>(), payload);
+        return CompilerProtocol.readOutput(in);
+    }
+
+    private static boolean hasError(CompilationOutput output, String message) {
+        return output.getReports().stream()
+                .anyMatch(report -> report.getType() == ReportType.ERROR && report.getMessage().contains(message));
+    }
+
+    @Test
+    public void compileThroughClient() throws Exception {
+        CompilationOutput output = new CompilerClient(clientConfig()).compile(writeSource(), clientConfig());
+        assertEquals("HelloWorld", output.getClassName());
+        assertNotNull(output.getJasminCode());
+        assertTrue(output.getReports().toString(),
+                output.getReports().stream().noneMatch(report -> report.getType() == ReportType.ERROR));
+    }
+
+    @Test
+    public void severalRequestsOnOneConnection() throws Exception {
+        String token = CompilerProtocol.readToken(tokenFile);
+        try (Socket socket = connect()) {
+            var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            for (int i = 0; i < 3; i++) {
+                CompilerProtocol.writeRequest(out, token, CompilerProtocol.PING, new HashMap<>(), null);
+                assertEquals("PONG", CompilerProtocol.readString(in));
+            }
+            CompilerProtocol.writeRequest(out, token, CompilerProtocol.COMPILE_SOURCE, clientConfig(),
+                    SpecsIo.getResource(HELLO_WORLD));
+            assertEquals("HelloWorld", CompilerProtocol.readOutput(in).getClassName());
+        }
+    }
+
+    @Test
+    public void wrongToken() throws Exception {
+        try (Socket socket = connect()) {
+            CompilationOutput output = send(socket, "not the token", CompilerProtocol.PING, null);
+            assertTrue(output.getReports().toString(), hasError(output, "server token"));
+        }
+    }
+
+    @Test
+    public void missingToken() throws Exception {
+        try (Socket socket = connect()) {
+            CompilationOutput output = send(socket, null, CompilerProtocol.SHUTDOWN, null);
+            assertTrue(output.getReports().toString(), hasError(output, "server token"));
+        }
+        // The shutdown was not run
+        assertTrue(new CompilerClient(clientConfig()).shutdownServer());
+    }
+
+    @Test
+    public void tokenCheckedBeforeTheRestOfTheRequest() throws Exception {
+        try (Socket socket = connect()) {
+            // Only the token is sent, the server must answer without waiting for the command and config
+            var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            CompilerProtocol.writeString(out, "not the token");
+            out.flush();
+
+            var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            assertTrue(hasError(CompilerProtocol.readOutput(in), "server token"));
+        }
+    }
+
+    @Test
+    public void tooLongToken() throws Exception {
+        try (Socket socket = connect()) {
+            var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(CompilerProtocol.MAX_STRING_BYTES);
+            out.flush();
+
+            // The connection is closed without an answer
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void clientFallsBackWhenServerHangs() throws Exception {
+        // Accepts connections but never answers
+        try (ServerSocket silent = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Map<String, String> config = clientConfig();
+            config.put("port", String.valueOf(silent.getLocalPort()));
+            config.put("readTimeout", "200");
+
+            long start = System.nanoTime();
+            CompilationOutput output = new CompilerClient(config).compile(writeSource(), config);
+            assertTrue("Waited for the server", System.nanoTime() - start < 30_000_000_000L);
+            assertEquals("HelloWorld", output.getClassName());
+        }
+    }
+
+    @Test
+    public void stringRoundTrip() throws Exception {
+        String large = "x".repeat(200_000) + "é";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        CompilerProtocol.writeString(out, large);
+        CompilerProtocol.writeString(out, null);
+        CompilerProtocol.writeString(out, "");
+
+        var in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(large, CompilerProtocol.readString(in));
+        assertNull(CompilerProtocol.readString(in));
+        assertEquals("", CompilerProtocol.readString(in));
+    }
+
+    @Test
+    public void outputRoundTrip() throws Exception {
+        CompilationOutput output = new CompilerClient(clientConfig()).compile(writeSource(), clientConfig());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompilerProtocol.writeOutput(new DataOutputStream(bytes), output);
+
+        CompilationOutput read = CompilerProtocol.readOutput(new DataInputStream(new ByteArrayInputStream(
+                bytes.toByteArray())));
+        assertEquals(output.getClassName(), read.getClassName());
+        assertEquals(output.getOllirCode(), read.getOllirCode());
+        assertEquals(output.getJasminCode(), read.getJasminCode());
+        assertEquals(output.getReports().toString(), read.getReports().toString());
+    }
+
+    @Test
+    public void badLengths() throws Exception {
+        for (int length : List.of(-2, Integer.MIN_VALUE, CompilerProtocol.MAX_STRING_BYTES + 1)) {
+            try {
+                CompilerProtocol.readString(input(length));
+                fail("Accepted length " + length);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("Invalid string length"));
+            }
+        }
+
+        // A valid length with fewer bytes than it says
+        try {
+            CompilerProtocol.readString(input(CompilerProtocol.MAX_STRING_BYTES, 'a', 'b'));
+            fail("Accepted a truncated string");
+        } catch (EOFException e) {
+            // Expected
+        }
+
+        for (int count : List.of(-1, CompilerProtocol.MAX_ENTRIES + 1)) {
+            try {
+                CompilerProtocol.readConfig(input(count));
+                fail("Accepted count " + count);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("Invalid entry count"));
+            }
+        }
+    }
+
+    private File writeSource() {
+        File source = dir.resolve("HelloWorld.jmm").toFile();
+        SpecsIo.write(source, SpecsIo.getResource(HELLO_WORLD));
+        return source;
+    }
+
+    private static DataInputStream input(int value, char... rest) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(value);
+        for (char c : rest) {
+            out.writeByte(c);
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
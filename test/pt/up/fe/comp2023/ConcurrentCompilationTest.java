@@ -0,0 +1,118 @@
+package pt.up.fe.comp2023;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs many compilations in the same JVM, one after the other and at the same time, and checks that they do not see
+ * each other's state: every compilation of a file must give the same result as the first one, with as many names in
+ * its symbol table.
+ */
+public class ConcurrentCompilationTest {
+
+    // TypeNotImported declares variables of types that the files before it import or declare, but it does not
+    private static final List<String> FILES = List.of(
+            "pt/up/fe/comp/cp2/semanticanalysis/ObjectAssignmentPassImports.jmm",
+            "pt/up/fe/comp2023/concurrent/TypeNotImported.jmm",
+            "pt/up/fe/comp/cp2/semanticanalysis/CallToMethodAssumedInImport.jmm",
+            "pt/up/fe/comp/cp2/apps/HelloWorld.jmm",
+            "pt/up/fe/comp/cp2/apps/Simple.jmm");
+
+    private static final int ROUNDS = 100;
+    private static final int THREADS = 8;
+
+    private static Map<String, String> config() {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "false");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        return config;
+    }
+
+    // The errors, the size of the symbol table and the OLLIR of a compilation, to compare runs. Names left over from
+    // other compilations would make the table grow from round to round.
+    private static String compile(String code) {
+        CompilationContext context = new CompilationPipeline().compile(code, config(), CompilationPipeline.Step.OLLIR);
+        StringBuilder result = new StringBuilder();
+        if (context.getSemanticsResult() != null) {
+            MySymbolTable table = (MySymbolTable) context.getSemanticsResult().getSymbolTable();
+            result.append("names: ").append(table.getInterner().size()).append('\n');
+        }
+        for (Report report : context.getReports()) {
+            if (report.getType() == ReportType.ERROR) {
+                result.append(report.getLine()).append(": ").append(report.getMessage()).append('\n');
+            }
+        }
+        if (context.getOllirResult() != null) {
+            result.append(context.getOllirResult().getOllirCode());
+        }
+        return result.toString();
+    }
+
+    private static List<String> readFiles() {
+        List<String> codes = new ArrayList<>();
+        for (String file : FILES) {
+            codes.add(SpecsIo.getResource(file));
+        }
+        return codes;
+    }
+
+    private static List<String> expected(List<String> codes) {
+        List<String> expected = new ArrayList<>();
+        for (String code : codes) {
+            expected.add(compile(code));
+        }
+        return expected;
+    }
+
+    @Test
+    public void sequential() {
+        List<String> codes = readFiles();
+        List<String> expected = expected(codes);
+        assertTrue("TypeNotImported must fail", expected.get(1).contains(": "));
+        for (int i = 0; i < codes.size(); i++) {
+            assertTrue(FILES.get(i) + " has no symbol table", expected.get(i).startsWith("names: "));
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < codes.size(); i++) {
+                assertEquals("Round " + round + ", " + FILES.get(i), expected.get(i), compile(codes.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        List<String> codes = readFiles();
+        List<String> expected = expected(codes);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (String code : codes) {
+                    futures.add(executor.submit(() -> compile(code)));
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                int file = i % codes.size();
+                assertEquals("Compilation " + i + ", " + FILES.get(file), expected.get(file), futures.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package pt.up.fe.comp2023;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.specs.util.SpecsIo;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Indexes class files compiled into a temporary library directory, some of them in packages and with the same simple
+ * name, and checks the lookups through superclasses and that changed files are read again.
+ */
+public class ImportResolverTest {
+
+    private static final Type INT = new Type("int", false);
+    private static final Type BOOLEAN = new Type("boolean", false);
+
+    private Path libPath;
+
+    @Before
+    public void compileLibrary() throws Exception {
+        libPath = Files.createTempDirectory("jmm-lib");
+        compile("Base", "public class Base { public int get() { return 0; } public Base self() { return this; } }");
+        compile("Derived", "public class Derived extends Base { public boolean check(int a) { return true; } }");
+        compile("pkg/a/Foo", "package pkg.a; public class Foo { public int value() { return 0; } }");
+        compile("pkg/b/Foo",
+                "package pkg.b; public class Foo extends pkg.a.Foo { public boolean flag() { return true; } }");
+    }
+
+    @After
+    public void deleteLibrary() throws Exception {
+        SpecsIo.deleteFolderContents(libPath.toFile());
+        Files.deleteIfExists(libPath);
+    }
+
+    // Compiles one class into the library directory, next to the classes already there
+    private void compile(String name, String code) throws Exception {
+        Path sources = Files.createTempDirectory("jmm-lib-src");
+        try {
+            Path source = sources.resolve(name + ".java");
+            Files.createDirectories(source.getParent());
+            Files.writeString(source, code);
+
+            JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            int result = javac.run(null, null, errors, "-d", libPath.toString(), "-cp", libPath.toString(),
+                    source.toString());
+            assertEquals(errors.toString(), 0, result);
+        } finally {
+            SpecsIo.deleteFolderContents(sources.toFile());
+            Files.deleteIfExists(sources);
+        }
+    }
+
+    private ImportResolver open() {
+        return ImportResolver.open(libPath, null);
+    }
+
+    @Test
+    public void indexByBinaryName() {
+        ImportResolver resolver = open();
+
+        assertEquals(Optional.of("Base"),
+                resolver.getClass("Derived").flatMap(ImportResolver.ImportedClass::getSuperName));
+        assertTrue(resolver.getClass("Base").orElseThrow().getSuperName().isEmpty());
+
+        // Same simple name, two classes
+        assertEquals(1, resolver.getClass("pkg.a.Foo").orElseThrow().getMethods("value").size());
+        assertTrue(resolver.getClass("pkg.a.Foo").orElseThrow().getMethods("flag").isEmpty());
+        assertEquals(1, resolver.getClass("pkg.b.Foo").orElseThrow().getMethods("flag").size());
+        assertEquals(Optional.of("pkg.a.Foo"),
+                resolver.getClass("pkg.b.Foo").flatMap(ImportResolver.ImportedClass::getSuperName));
+        assertTrue(resolver.getClass("Foo").isEmpty());
+    }
+
+    @Test
+    public void returnTypeThroughSuperclasses() {
+        ImportResolver resolver = open();
+
+        assertEquals(Optional.of(BOOLEAN), resolver.getReturnType("Derived", "check", List.of(INT)));
+        assertEquals(Optional.of(INT), resolver.getReturnType("Derived", "get", List.of()));
+        // Parameter and return types keep the simple name, as jmm types do
+        assertEquals(Optional.of(new Type("Base", false)), resolver.getReturnType("Derived", "self", List.of()));
+        assertEquals(Optional.of(INT), resolver.getReturnType("pkg.b.Foo", "value", List.of()));
+
+        assertEquals(Optional.empty(), resolver.getReturnType("Derived", "check", List.of(BOOLEAN)));
+        assertEquals(Optional.of(BOOLEAN),
+                resolver.getReturnType("Derived", "check", List.of(new Type("#UNKNOWN", false))));
+        assertEquals(Optional.empty(), resolver.getReturnType("Derived", "missing", List.of()));
+        assertEquals(Optional.empty(), resolver.getReturnType("Missing", "get", List.of()));
+    }
+
+    @Test
+    public void subclasses() {
+        ImportResolver resolver = open();
+
+        assertTrue(resolver.isSubclass("Derived", "Base"));
+        assertTrue(resolver.isSubclass("Base", "Base"));
+        assertFalse(resolver.isSubclass("Base", "Derived"));
+        assertTrue(resolver.isSubclass("pkg.b.Foo", "pkg.a.Foo"));
+        assertFalse(resolver.isSubclass("pkg.a.Foo", "pkg.b.Foo"));
+    }
+
+    @Test
+    public void refresh() throws Exception {
+        ImportResolver resolver = open();
+        assertTrue(resolver.getClass("pkg.a.Bar").isEmpty());
+
+        // A class added to a subdirectory does not change the modification time of the library directory
+        FileTime rootModified = Files.getLastModifiedTime(libPath);
+        compile("pkg/a/Bar", "package pkg.a; public class Bar { }");
+        Files.setLastModifiedTime(libPath, rootModified);
+        assertTrue(open().getClass("pkg.a.Bar").isPresent());
+
+        // Neither does a class file replaced in place
+        Path baseFile = libPath.resolve("Base.class");
+        FileTime baseModified = Files.getLastModifiedTime(baseFile);
+        compile("Base", "public class Base { public int get() { return 0; } public int other() { return 1; } }");
+        Files.setLastModifiedTime(baseFile, FileTime.fromMillis(baseModified.toMillis() + 10_000));
+        Files.setLastModifiedTime(libPath, rootModified);
+        assertEquals(Optional.of(INT), open().getReturnType("Derived", "other", List.of()));
+
+        Files.delete(libPath.resolve("pkg/a/Bar.class"));
+        assertTrue(open().getClass("pkg.a.Bar").isEmpty());
+    }
+
+    @Test
+    public void analysisUsesTheImportedClass() {
+        Map<String, String> config = Map.of("libPath", libPath.toString());
+        String code = "import pkg.b.Foo;\n"
+                + "class UsesFoo {\n"
+                + "    public int g() {\n"
+                + "        Foo foo; int x; boolean y;\n"
+                + "        foo = new Foo(); x = foo.value(); y = foo.flag();\n"
+                + "        return x;\n"
+                + "    }\n"
+                + "    public static void main(String[] args) { }\n"
+                + "}\n";
+        var result = TestUtils.analyse(code, config);
+        TestUtils.noErrors(result);
+
+        List<String> types = new ArrayList<>();
+        collectCallTypes(result.getRootNode(), types);
+        assertEquals(List.of("int", "boolean"), types);
+    }
+
+    @Test
+    public void cacheKeyHashesQualifiedImports() throws Exception {
+        Path cacheDir = Files.createTempDirectory("jmm-cache");
+        try {
+            CompilationCache cache = CompilationCache.open(cacheDir, CompilationCache.DEFAULT_MAX_BYTES);
+            Map<String, String> config = Map.of("libPath", libPath.toString());
+            String code = "import pkg.b.Foo;\nclass UsesFoo extends Foo { }\n";
+
+            String before = cache.key(code, config);
+            assertEquals(before, cache.key(code, config));
+            // The superclass of the import is hashed too
+            compile("pkg/a/Foo",
+                    "package pkg.a; public class Foo { public int more() { return 0; } }");
+            assertNotEquals(before, cache.key(code, config));
+        } finally {
+            SpecsIo.deleteFolderContents(cacheDir.toFile());
+            Files.deleteIfExists(cacheDir);
+        }
+    }
+
+    private static void collectCallTypes(JmmNode node, List<String> types) {
+        if (node.getKind().equals("MethodCall") && node.hasAttribute("type")) {
+            types.add(node.get("type"));
+        }
+        for (JmmNode child : node.getChildren()) {
+            collectCallTypes(child, types);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package pt.up.fe.comp2023;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.Test;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reads source files through {@link MappedCharStream} and compares it with an ANTLRInputStream over the same text.
+ */
+public class MappedCharStreamTest {
+
+    private static MappedCharStream open(String code) throws Exception {
+        Path file = Files.createTempFile("source", ".jmm");
+        try {
+            Files.write(file, code.getBytes(StandardCharsets.UTF_8));
+            MappedCharStream stream = MappedCharStream.open(file);
+            // Read files are not held open, the file can be replaced or deleted while the stream is used
+            Files.write(file, new byte[0]);
+            return stream;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertSameStream(String code, CharStream stream) {
+        CharStream expected = new ANTLRInputStream(code);
+        assertEquals(expected.size(), stream.size());
+        for (int i = 0; i <= expected.size(); i++) {
+            for (int lookahead : new int[]{-1, 1, 2}) {
+                assertEquals("At " + i + ", LA(" + lookahead + ")", expected.LA(lookahead), stream.LA(lookahead));
+            }
+            if (i < expected.size()) {
+                expected.consume();
+                stream.consume();
+            }
+        }
+        assertEquals(IntStream.EOF, stream.LA(1));
+        assertEquals(code, stream.toString());
+        assertEquals(expected.getText(Interval.of(3, 9)), stream.getText(Interval.of(3, 9)));
+    }
+
+    @Test
+    public void ascii() throws Exception {
+        String code = SpecsIo.getResource("pt/up/fe/comp/cp2/apps/HelloWorld.jmm");
+        assertSameStream(code, open(code));
+    }
+
+    @Test
+    public void utf8() throws Exception {
+        String code = "class Olá { // ç\n}\n";
+        assertSameStream(code, open(code));
+    }
+
+    @Test
+    public void empty() throws Exception {
+        MappedCharStream stream = open("");
+        assertEquals(0, stream.size());
+        assertEquals(IntStream.EOF, stream.LA(1));
+        assertEquals("", stream.toString());
+    }
+
+    @Test
+    public void largeFileIsMapped() throws Exception {
+        StringBuilder code = new StringBuilder(MappedCharStream.MAX_READ_BYTES + 64);
+        while (code.length() <= MappedCharStream.MAX_READ_BYTES) {
+            code.append("// comment line\n");
+        }
+
+        Path file = Files.createTempFile("source", ".jmm");
+        try {
+            Files.writeString(file, code);
+            MappedCharStream stream = MappedCharStream.open(file);
+            assertEquals(code.length(), stream.size());
+            stream.seek(code.length() - 2);
+            assertEquals('e', stream.LA(1));
+            assertEquals('\n', stream.LA(2));
+            assertEquals(IntStream.EOF, stream.LA(3));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package pt.up.fe.comp2023;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Calls to methods with several overloads, that differ in the number and in the types of their parameters.
+ */
+public class OverloadTest {
+
+    private static final String OVERLOADS = "pt/up/fe/comp2023/overload/Overloads.jmm";
+
+    private static JmmSemanticsResult analyse(String file) {
+        return TestUtils.analyse(SpecsIo.getResource(file));
+    }
+
+    private static boolean hasError(List<Report> reports, String message) {
+        return reports.stream()
+                .anyMatch(report -> report.getType() == ReportType.ERROR && report.getMessage().contains(message));
+    }
+
+    @Test
+    public void analysis() {
+        var result = analyse(OVERLOADS);
+        TestUtils.noErrors(result);
+
+        MySymbolTable table = (MySymbolTable) result.getSymbolTable();
+        assertEquals(3, table.getOverloads("f").size());
+        assertEquals(2, table.getOverloads("f", 1).size());
+        assertEquals(1, table.getOverloads("f", 2).size());
+    }
+
+    @Test
+    public void noMatchingOverload() {
+        var result = analyse("pt/up/fe/comp2023/overload/NoMatchingOverload.jmm");
+        TestUtils.mustFail(result);
+        assertTrue(result.getReports().toString(), hasError(result.getReports(), "f"));
+    }
+
+    @Test
+    public void ambiguousOverload() {
+        // C could be passed as an A or as a B, and neither is an exact match
+        var result = analyse("pt/up/fe/comp2023/overload/AmbiguousOverload.jmm");
+        TestUtils.mustFail(result);
+    }
+
+    @Test
+    public void lookupByName() {
+        MySymbolTable table = (MySymbolTable) analyse(OVERLOADS).getSymbolTable();
+
+        // Names with a single method still work
+        assertEquals(new Type("int", false), table.getReturnType("h"));
+        assertEquals(1, table.getParameters("h").size());
+
+        for (Runnable lookup : List.<Runnable>of(() -> table.getReturnType("f"), () -> table.getParameters("f"),
+                () -> table.getLocalVariables("f"))) {
+            try {
+                lookup.run();
+                fail("Looked up an overloaded method by its name");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage().contains("overloaded"));
+            }
+        }
+
+        String printed = table.print();
+        assertTrue(printed, printed.contains("Methods: 6"));
+        assertTrue(printed, printed.contains("f(int)"));
+        assertTrue(printed, printed.contains("f(int,int)"));
+        assertTrue(printed, printed.contains("f(boolean)"));
+    }
+
+    @Test
+    public void ollir() {
+        OllirResult result = TestUtils.optimize(SpecsIo.getResource(OVERLOADS));
+        TestUtils.noErrors(result);
+
+        String code = result.getOllirCode();
+        assertTrue(code, code.contains(".method public f(a.i32).i32"));
+        assertTrue(code, code.contains(".method public f(a.i32, b.i32).i32"));
+        assertTrue(code, code.contains(".method public f(c.bool).bool"));
+        assertTrue(code, code.contains("invokevirtual(this, \"f\", 1.i32).i32"));
+        assertTrue(code, code.contains("invokevirtual(this, \"f\", 1.i32, 2.i32).i32"));
+        assertTrue(code, code.contains("invokevirtual(this, \"f\", true.bool).bool"));
+
+        TestUtils.noErrors(TestUtils.backend(result));
+    }
+}
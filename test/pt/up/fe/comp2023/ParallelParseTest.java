@@ -0,0 +1,75 @@
+package pt.up.fe.comp2023;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that splitting a file at its methods and parsing them in parallel gives the same tree as parsing it in one
+ * pass, and that the work on the other threads is counted in the metrics of the parse.
+ */
+public class ParallelParseTest {
+
+    private static final String FILE = "pt/up/fe/comp2023/parse/ManyMethods.jmm";
+
+    private static JmmNode parse(String code, boolean parallel) {
+        JmmParserResult result = new SimpleParser().parse(code, Map.of("parallelParse", Boolean.toString(parallel)));
+        assertNotNull(result.getReports().toString(), result.getRootNode());
+        return result.getRootNode();
+    }
+
+    @Test
+    public void sameTreeAsSequential() {
+        String code = SpecsIo.getResource(FILE);
+
+        // The file must actually be split, not parsed as a whole after the split failed
+        Optional<JmmNode> split = ParallelParser.parse(new ANTLRInputStream(code));
+        assertTrue("The file was not split at its methods", split.isPresent());
+        assertTrue(split.get().getJmmChild(1).getNumChildren() >= 16);
+
+        String sequential = TreeDump.withPositions(parse(code, false));
+        assertEquals(sequential, TreeDump.withPositions(split.get()));
+        assertEquals(sequential, TreeDump.withPositions(parse(code, true)));
+    }
+
+    @Test
+    public void fallsBackOnSyntaxErrors() {
+        String code = SpecsIo.getResource(FILE).replace("return count; }", "return count }");
+
+        assertTrue(ParallelParser.parse(new ANTLRInputStream(code)).isEmpty());
+        JmmParserResult result = new SimpleParser().parse(code, Map.of("parallelParse", "true"));
+        assertTrue(result.getRootNode() == null && !result.getReports().isEmpty());
+    }
+
+    @Test
+    public void workerMetrics() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            StageMetrics.begin("test");
+            Function<Integer, byte[]> body = StageMetrics.onWorkers("worker", size -> new byte[size]);
+            executor.submit(() -> body.apply(1 << 20)).get();
+            String csv = StageMetrics.toCsv(List.of(StageMetrics.end()));
+
+            String line = csv.lines().filter(row -> row.contains(",worker,")).findFirst().orElse(null);
+            assertNotNull(csv, line);
+            String[] columns = line.split(",");
+            assertEquals("The wall time is measured by the stage on the calling thread", "0", columns[2]);
+            assertTrue(csv, Long.parseLong(columns[4]) >= 1 << 20);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
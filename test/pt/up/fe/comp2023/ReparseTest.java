@@ -0,0 +1,109 @@
+package pt.up.fe.comp2023;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that parsing again only the edited method gives the same tree as parsing the whole new code, with the same
+ * positions in every node, including the nodes after the method.
+ */
+public class ReparseTest {
+
+    private static final List<String> FILES = List.of(
+            "pt/up/fe/comp/jmm/symboltable/MethodsAndFields.jmm",
+            "pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayAsArg.jmm",
+            "pt/up/fe/comp/cp2/apps/Simple.jmm",
+            "pt/up/fe/comp/cp2/apps/HelloWorld.jmm");
+
+    // Several methods on the same lines, so that edits also move the columns of the nodes after them
+    private static final String SAME_LINE = "import io;\n"
+            + "class Over {\n"
+            + "    public int f(int a) { int r; r = 1; return r; } public int g(int a) { return a + 1; }\n"
+            + "    public boolean h(boolean c) { boolean r; r = true; return r; }\n"
+            + "    public static void main(String[] args) { Over o; int x; o = new Over(); x = o.f(1); io.println(x); }\n"
+            + "}\n";
+
+    private static final String[] INSERTS = {"\n\n", " ", "\n  int zz;\n", "a = 1;\n", "x"};
+
+    private static final Map<String, String> CONFIG = Collections.emptyMap();
+
+    // Applies the edit both ways, returns whether only the method was parsed again
+    private static boolean checkEdit(String name, String code, TextEdit edit) {
+        SimpleParser parser = new SimpleParser();
+        JmmParserResult previous = parser.parse(code, CONFIG);
+        assertNotNull(name, previous.getRootNode());
+
+        boolean incremental = parser.reparseMethod(previous, code, edit, null).isPresent();
+        JmmParserResult full = parser.parse(edit.apply(code), CONFIG);
+        if (incremental) {
+            assertNotNull(name + ", " + edit + " was reparsed but the new code does not parse", full.getRootNode());
+            assertEquals(name + ", " + edit, TreeDump.withPositions(full.getRootNode()),
+                    TreeDump.withPositions(previous.getRootNode()));
+        }
+        return incremental;
+    }
+
+    @Test
+    public void randomEdits() {
+        Random random = new Random(1);
+        int incremental = 0;
+        for (String file : FILES) {
+            String code = SpecsIo.getResource(file);
+            for (int i = 0; i < 40; i++) {
+                int offset = random.nextInt(code.length());
+                String text = INSERTS[random.nextInt(INSERTS.length)];
+                int length = random.nextInt(3) == 0 ? Math.min(random.nextInt(4), code.length() - offset) : 0;
+                if (checkEdit(file, code, new TextEdit(offset, length, text))) {
+                    incremental++;
+                }
+            }
+        }
+        assertTrue("Only " + incremental + " edits were applied to a single method", incremental > 20);
+    }
+
+    @Test
+    public void editsOnSharedLines() {
+        int incremental = 0;
+        for (int offset = 0; offset < SAME_LINE.length(); offset++) {
+            for (String text : INSERTS) {
+                if (checkEdit("SAME_LINE", SAME_LINE, new TextEdit(offset, 0, text))) {
+                    incremental++;
+                }
+            }
+        }
+        assertTrue("Only " + incremental + " edits were applied to a single method", incremental > 100);
+    }
+
+    @Test
+    public void replaceMethodBody() {
+        String code = SAME_LINE;
+        int offset = code.indexOf("return a + 1;");
+        TextEdit edit = new TextEdit(offset, "return a + 1;".length(), "int b;\n        b = a * 2;\n        return b;");
+        assertTrue(checkEdit("SAME_LINE", code, edit));
+    }
+
+    @Test
+    public void reparseMatchesParse() {
+        SimpleParser parser = new SimpleParser();
+        String code = SpecsIo.getResource(FILES.get(0));
+        int offset = code.indexOf("return field2;");
+
+        // Inside a method, then across two methods, which needs a full parse
+        for (TextEdit edit : List.of(new TextEdit(offset, 0, "field1 = 2;\n\t\t"),
+                new TextEdit(offset, code.indexOf("return field3;") - offset, "return true;\n\t}\n\tpublic int x(){\n\t\t"))) {
+            JmmParserResult result = parser.reparse(parser.parse(code, CONFIG), code, edit, CONFIG);
+            assertEquals(edit.toString(), TreeDump.withPositions(parser.parse(edit.apply(code), CONFIG).getRootNode()),
+                    TreeDump.withPositions(result.getRootNode()));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package pt.up.fe.comp2023;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Names seen from inside a method: locals hide parameters, which hide fields. Checked on the symbol table, and on the
+ * analysis and OLLIR of a class whose locals and parameters have the names of its fields.
+ */
+public class ScopeTest {
+
+    private static final Type INT = new Type("int", false);
+    private static final Type BOOLEAN = new Type("boolean", false);
+
+    private static final String SHADOWING = "pt/up/fe/comp2023/scope/Shadowing.jmm";
+
+    private static MySymbolTable table() {
+        return MySymbolTable.builder()
+                .setClassName("Scopes")
+                .addField(new Symbol(BOOLEAN, "x"))
+                .addField(new Symbol(BOOLEAN, "y"))
+                .addField(new Symbol(INT, "z"))
+                .addMethod("m", INT, List.of(new Symbol(INT, "x"), new Symbol(INT, "y")),
+                        List.of(new Symbol(BOOLEAN, "y")))
+                .addMethod("n", INT, List.of(new Symbol(INT, "a"), new Symbol(INT, "b"), new Symbol(BOOLEAN, "c")),
+                        List.of())
+                .build();
+    }
+
+    @Test
+    public void localHidesParameter() {
+        ScopedSymbol y = table().resolve("m", "y").orElseThrow();
+        assertEquals(ScopedSymbol.Kind.LOCAL, y.getKind());
+        assertEquals(BOOLEAN, y.getType());
+        assertEquals(-1, y.getParameterIndex());
+    }
+
+    @Test
+    public void parameterHidesField() {
+        ScopedSymbol x = table().resolve("m", "x").orElseThrow();
+        assertEquals(ScopedSymbol.Kind.PARAMETER, x.getKind());
+        assertEquals(INT, x.getType());
+        assertFalse(x.isField());
+    }
+
+    @Test
+    public void fields() {
+        MySymbolTable table = table();
+        ScopedSymbol z = table.resolve("m", "z").orElseThrow();
+        assertTrue(z.isField());
+        assertEquals(INT, z.getType());
+        assertEquals(-1, z.getParameterIndex());
+
+        // Outside of the methods only fields are seen
+        assertEquals(BOOLEAN, table.resolve("n", "x").orElseThrow().getType());
+        assertTrue(table.resolve("n", "missing").isEmpty());
+        assertTrue(table.resolve("missing", "y").orElseThrow().isField());
+    }
+
+    @Test
+    public void parameterIndex() {
+        // The position in the signature, the $n. prefix of OLLIR is this index plus one
+        MySymbolTable table = table();
+        assertEquals(0, table.resolve("n", "a").orElseThrow().getParameterIndex());
+        assertEquals(1, table.resolve("n", "b").orElseThrow().getParameterIndex());
+        assertEquals(2, table.resolve("n", "c").orElseThrow().getParameterIndex());
+        assertEquals(0, table.resolve("m", "x").orElseThrow().getParameterIndex());
+    }
+
+    @Test
+    public void analysis() {
+        // x is a boolean field, the int local and parameter named x hide it
+        TestUtils.noErrors(TestUtils.analyse(SpecsIo.getResource(SHADOWING)));
+    }
+
+    @Test
+    public void ollir() {
+        OllirResult result = TestUtils.optimize(SpecsIo.getResource(SHADOWING));
+        TestUtils.noErrors(result);
+        String code = result.getOllirCode();
+
+        String local = method(code, "local");
+        assertTrue(local, local.contains("x.i32 :=.i32 1.i32;"));
+        assertFalse(local, local.contains("putfield"));
+
+        String parameter = method(code, "parameter");
+        assertTrue(parameter, parameter.contains("x.i32;"));
+        assertFalse(parameter, parameter.contains("getfield"));
+
+        String assign = method(code, "assign");
+        assertTrue(assign, assign.contains("x.i32 :=.i32 4.i32;"));
+        assertFalse(assign, assign.contains("putfield"));
+
+        String field = method(code, "field");
+        assertTrue(field, field.contains("getfield(this, y.i32).i32"));
+
+        TestUtils.noErrors(TestUtils.backend(result));
+    }
+
+    // The code of one method, from its header to the next method
+    private static String method(String code, String name) {
+        int start = code.indexOf(".method public " + name + "(");
+        assertTrue(code, start != -1);
+        int end = code.indexOf(".method", start + 1);
+        return code.substring(start, end == -1 ? code.length() : end);
+    }
+}
@@ -0,0 +1,68 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.List;
+
+/**
+ * Prints trees one node per line, indented by depth, so that tests can compare two trees as Strings and show where
+ * they differ.
+ */
+public final class TreeDump {
+
+    private TreeDump() {
+    }
+
+    /**
+     * @return each node as toString prints it, followed by its position
+     */
+    public static String withPositions(JmmNode node) {
+        StringBuilder result = new StringBuilder();
+        withPositions(node, "", result);
+        return result.toString();
+    }
+
+    private static void withPositions(JmmNode node, String indent, StringBuilder result) {
+        result.append(indent).append(node).append(" @")
+                .append(node.getOptional("lineStart").orElse("-")).append(':')
+                .append(node.getOptional("colStart").orElse("-")).append('-')
+                .append(node.getOptional("lineEnd").orElse("-")).append(':')
+                .append(node.getOptional("colEnd").orElse("-")).append('\n');
+        for (JmmNode child : node.getChildren()) {
+            withPositions(child, indent + " ", result);
+        }
+    }
+
+    /**
+     * @return the kind, hierarchy and every attribute of each node, in order. Attributes that hold nodes print those
+     * nodes.
+     */
+    public static String withAttributes(JmmNode node) {
+        StringBuilder result = new StringBuilder();
+        withAttributes(node, "", result);
+        return result.toString();
+    }
+
+    private static void withAttributes(JmmNode node, String indent, StringBuilder result) {
+        result.append(indent).append(node.getKind()).append(' ').append(node.getHierarchy());
+        for (String attribute : node.getAttributes()) {
+            result.append(' ').append(attribute).append('=').append(node.getObject(attribute));
+        }
+        result.append('\n');
+        for (JmmNode child : node.getChildren()) {
+            withAttributes(child, indent + " ", result);
+        }
+    }
+
+    /**
+     * Adds the node and the nodes below it that are of the given kind to found, in preorder.
+     */
+    public static void collect(JmmNode node, String kind, List<JmmNode> found) {
+        if (node.getKind().equals(kind)) {
+            found.add(node);
+        }
+        for (JmmNode child : node.getChildren()) {
+            collect(child, kind, found);
+        }
+    }
+}